@@ -2,6 +2,7 @@ package com.shop;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 在线购物网站 - 启动类
@@ -10,8 +11,11 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * - @Configuration: 标记为配置类
  * - @EnableAutoConfiguration: 自动配置 Spring Boot
  * - @ComponentScan: 自动扫描当前包及子包的组件
+ * 
+ * @EnableScheduling 开启定时任务（商品目录定时刷新等）
  */
 @SpringBootApplication
+@EnableScheduling
 public class OnlineShoppingApplication {
     
     /**
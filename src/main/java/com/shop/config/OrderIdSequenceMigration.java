@@ -0,0 +1,53 @@
+package com.shop.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 订单主键从 AUTO_INCREMENT 切换到池化序列后的迁移
+ * 序列表由 Hibernate 建表时从 1 开始，已有订单的 ID 会和新分配的冲突；
+ * 启动时（Hibernate 更新表结构之后、接收请求之前）把序列表的 next_val 推到 max(id) 之后。
+ * 每次启动都执行，值已经足够大时不会改动，可以重复运行
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class OrderIdSequenceMigration {
+
+    // 与实体上 @SequenceGenerator 的 allocationSize 保持一致
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void migrate() {
+        advance("orders_seq", "orders");
+        advance("order_items_seq", "order_items");
+    }
+
+    /**
+     * 池化优化器把 next_val 当作号段上界，分配的号段从 next_val - allocationSize + 1 开始，
+     * 所以 next_val 至少要是 max(id) + allocationSize + 1
+     */
+    private void advance(String sequenceTable, String table) {
+        try {
+            long minimum = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class) + ALLOCATION_SIZE + 1;
+            Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + sequenceTable, Integer.class);
+            if (rows == null || rows == 0) {
+                jdbcTemplate.update("INSERT INTO " + sequenceTable + " (next_val) VALUES (?)", minimum);
+                return;
+            }
+            int updated = jdbcTemplate.update(
+                "UPDATE " + sequenceTable + " SET next_val = ? WHERE next_val < ?", minimum, minimum);
+            if (updated > 0) {
+                System.out.println("✅ " + sequenceTable + " 已推进到 " + minimum);
+            }
+        } catch (Exception e) {
+            System.err.println("迁移订单主键序列失败：" + sequenceTable + "，" + e.getMessage());
+        }
+    }
+}
\ No newline at end of file
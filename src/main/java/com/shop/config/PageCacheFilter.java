@@ -0,0 +1,153 @@
+package com.shop.config;
+
+import com.shop.service.PageCache;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 匿名用户页面输出缓存过滤器
+ * 只处理匿名用户对首页、商品列表和商品详情的 GET 请求：命中时直接写出缓存的字节，
+ * 未命中时记录渲染结果放入 PageCache。在 Spring Security 过滤链之后执行，此时已能判断是否登录
+ */
+@Component
+public class PageCacheFilter extends OncePerRequestFilter {
+
+    private static final Pattern DETAIL_PATH = Pattern.compile("/products/(\\d{1,18})");
+
+    // SessionFlashMapManager 保存 flash 消息使用的 Session 属性
+    private static final String FLASH_MAPS_ATTRIBUTE =
+        "org.springframework.web.servlet.support.SessionFlashMapManager.FLASH_MAPS";
+
+    @Autowired
+    private PageCache pageCache;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())) {
+            return true;
+        }
+        String path = path(request);
+        return !path.equals("/") && !path.equals("/products") && !DETAIL_PATH.matcher(path).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!pageCache.isEnabled() || !isAnonymous() || hasFlash(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String key = request.getQueryString() == null
+                   ? request.getRequestURI()
+                   : request.getRequestURI() + "?" + request.getQueryString();
+        PageCache.Entry entry = pageCache.get(key);
+        if (entry != null) {
+            write(request, response, entry);
+            return;
+        }
+
+        long version = pageCache.currentVersion();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+            if (isCacheable(request, wrapper)) {
+                pageCache.put(key, wrapper.getContentAsByteArray(), wrapper.getContentType(),
+                              wrapper.getHeader(HttpHeaders.ETAG), wrapper.getHeader(HttpHeaders.CACHE_CONTROL),
+                              wrapper.getHeader(HttpHeaders.LAST_MODIFIED), productIds(request),
+                              "/products".equals(path(request)),
+                              version);
+            }
+        } finally {
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    /**
+     * 写出缓存的页面，同样支持条件请求，客户端接受 gzip 时直接写出压缩好的内容
+     */
+    private void write(HttpServletRequest request, HttpServletResponse response, PageCache.Entry entry)
+            throws IOException {
+        if (entry.getCacheControl() != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, entry.getCacheControl());
+        }
+        if (entry.getLastModified() != null) {
+            response.setHeader(HttpHeaders.LAST_MODIFIED, entry.getLastModified());
+        }
+        if (entry.getEtag() != null) {
+            response.setHeader(HttpHeaders.ETAG, entry.getEtag());
+            String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+            if (ifNoneMatch != null && ifNoneMatch.contains(entry.getEtag())) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        response.setContentType(entry.getContentType());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        byte[] body = entry.getBody();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (entry.getGzipBody() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = entry.getGzipBody();
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * 只缓存正常渲染的 HTML；本次请求新建了 Session 时，页面中的链接可能带有 jsessionid，不缓存
+     */
+    private boolean isCacheable(HttpServletRequest request, ContentCachingResponseWrapper response) {
+        if (response.getStatus() != HttpServletResponse.SC_OK || response.getContentType() == null
+                || !MediaType.TEXT_HTML.isCompatibleWith(MediaType.parseMediaType(response.getContentType()))) {
+            return false;
+        }
+        HttpSession session = request.getSession(false);
+        if (session != null && (session.isNew() || request.isRequestedSessionIdFromURL())) {
+            return false;
+        }
+        return isAnonymous();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Long> productIds(HttpServletRequest request) {
+        Object ids = request.getAttribute(PageCache.PRODUCT_IDS_ATTRIBUTE);
+        if (ids instanceof Collection) {
+            return (Collection<Long>) ids;
+        }
+        Matcher matcher = DETAIL_PATH.matcher(path(request));
+        return matcher.matches() ? List.of(Long.valueOf(matcher.group(1))) : null;
+    }
+
+    private String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private boolean isAnonymous() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth == null || auth instanceof AnonymousAuthenticationToken;
+    }
+
+    private boolean hasFlash(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        return session != null && session.getAttribute(FLASH_MAPS_ATTRIBUTE) != null;
+    }
+}
\ No newline at end of file
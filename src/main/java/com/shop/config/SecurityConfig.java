@@ -48,6 +48,8 @@ public class SecurityConfig {
                                "/css/**", "/js/**", "/images/**").permitAll()
                 // 管理员页面需要 ADMIN 角色
                 .requestMatchers("/admin/**").hasRole("ADMIN")
+                // 运行指标只对管理员开放
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 // 其他所有请求需要登录
                 .anyRequest().authenticated()
             )
@@ -1,21 +1,42 @@
 package com.shop.controller;
 
-import com.shop.dto.ProductSalesDTO;
+import com.shop.dto.ImportResult;
+import com.shop.dto.OrderFilter;
+import com.shop.dto.OrderPage;
+import com.shop.dto.ProductSummaryDTO;
 import com.shop.entity.Order;
-import com.shop.entity.OrderItem;
+import com.shop.entity.OrderStatus;
 import com.shop.entity.Product;
 import com.shop.entity.User;
+import com.shop.service.OrderExportService;
 import com.shop.service.OrderService;
+import com.shop.service.ProductBulkService;
 import com.shop.service.ProductService;
+import com.shop.service.SalesStatsService;
 import com.shop.service.UserService;
 import com.shop.service.EmailService;
+import com.shop.service.ImageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.util.UriComponentsBuilder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * 管理员控制器
@@ -36,6 +57,30 @@ public class AdminController {
 
     @Autowired
     private EmailService emailService;
+
+    @Autowired
+    private ProductBulkService productBulkService;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Autowired
+    private SalesStatsService salesStatsService;
+    
+    /**
+     * 订单管理每页条数
+     */
+    @Value("${shop.admin.orders.page-size:50}")
+    private int orderPageSize;
+
+    /**
+     * 批量导入文件大小上限（字节）；导入直接读取请求体，不受全局 multipart 上限约束
+     */
+    @Value("${shop.import.max-bytes:209715200}")
+    private long importMaxBytes;
     
     /**
      * 管理员首页
@@ -52,7 +97,7 @@ public class AdminController {
      */
     @GetMapping("/products")
     public String manageProducts(Model model) {
-        List<Product> products = productService.findAll();
+        List<ProductSummaryDTO> products = productService.findAllSummaries();
         model.addAttribute("products", products);
         return "admin/products";
     }
@@ -71,7 +116,7 @@ public class AdminController {
      */
     @GetMapping("/products/edit/{id}")
     public String editProductForm(@PathVariable("id") Long id, Model model) {
-        Product product = productService.findById(id);
+        Product product = productService.findEntityById(id);
         if (product == null) {
             return "redirect:/admin/products";
         }
@@ -84,8 +129,13 @@ public class AdminController {
      */
     @PostMapping("/products/save")
     public String saveProduct(@ModelAttribute Product product,
+                             @RequestParam(value = "imageFile", required = false) MultipartFile imageFile,
                              RedirectAttributes redirectAttributes) {
         try {
+            // 上传了图片时使用本地图片，覆盖填写的图片 URL
+            if (imageFile != null && !imageFile.isEmpty()) {
+                product.setImageUrl(imageService.store(imageFile));
+            }
             productService.save(product);
             redirectAttributes.addFlashAttribute("message", "商品保存成功");
         } catch (Exception e) {
@@ -109,18 +159,140 @@ public class AdminController {
         return "redirect:/admin/products";
     }
     
+    /**
+     * 批量导入页面
+     */
+    @GetMapping("/products/import")
+    public String importForm(Model model) {
+        model.addAttribute("progress", productBulkService.getProgress());
+        return "admin/product-import";
+    }
+    
+    /**
+     * 批量导入商品（CSV 或 JSONL），文件内容即请求体（不走 multipart 解析，不落临时文件），流式读取，分批写入
+     * CSRF 令牌通过 X-CSRF-TOKEN 请求头传递；返回导入结果 JSON，失败时返回错误信息
+     */
+    @PostMapping(value = "/products/import", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> importProducts(@RequestParam(value = "format", defaultValue = "csv") String format,
+                                            HttpServletRequest request) {
+        long length = request.getContentLengthLong();
+        if (length == 0) {
+            return importError(HttpStatus.BAD_REQUEST, "请选择要导入的文件");
+        }
+        if (length < 0 || length > importMaxBytes) {
+            return importError(HttpStatus.PAYLOAD_TOO_LARGE, "导入文件不能超过 " + importMaxBytes / 1024 / 1024 + "MB");
+        }
+        try (InputStream input = request.getInputStream()) {
+            return ResponseEntity.ok(productBulkService.importProducts(input, format));
+        } catch (Exception e) {
+            return importError(HttpStatus.BAD_REQUEST, "导入失败：" + e.getMessage());
+        }
+    }
+
+    private ResponseEntity<String> importError(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+            .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+            .body(message);
+    }
+    
+    /**
+     * 查询导入进度（JSON，导入过程中可轮询）
+     */
+    @GetMapping("/products/import/status")
+    @ResponseBody
+    public ImportResult importStatus() {
+        return productBulkService.getProgress();
+    }
+    
+    /**
+     * 导出全部商品（CSV 或 JSONL），边查询边写出
+     */
+    @GetMapping("/products/export")
+    public void exportProducts(@RequestParam(value = "format", defaultValue = "csv") String format,
+                               HttpServletResponse response) throws IOException {
+        boolean jsonl = "jsonl".equalsIgnoreCase(format);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType(jsonl ? "application/x-ndjson" : "text/csv");
+        response.setHeader("Content-Disposition", "attachment; filename=products." + (jsonl ? "jsonl" : "csv"));
+        productBulkService.exportProducts(response.getWriter(), format);
+    }
+    
     // ==================== 订单管理 ====================
     
     /**
      * 订单管理页面
      */
     @GetMapping("/orders")
-    public String manageOrders(Model model) {
-        List<Order> orders = orderService.findAll();
-        model.addAttribute("orders", orders);
+    public String manageOrders(@RequestParam(value = "status", required = false) String status,
+                               @RequestParam(value = "userId", required = false) Long userId,
+                               @RequestParam(value = "from", required = false)
+                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                               @RequestParam(value = "to", required = false)
+                               @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                               @RequestParam(value = "minAmount", required = false) BigDecimal minAmount,
+                               @RequestParam(value = "maxAmount", required = false) BigDecimal maxAmount,
+                               @RequestParam(value = "after", required = false) String after,
+                               @RequestParam(value = "before", required = false) String before,
+                               Model model) {
+        // 结束日期包含当天
+        OrderFilter filter = new OrderFilter(status == null || status.isEmpty() ? null : status, userId,
+                from != null ? from.atStartOfDay() : null,
+                to != null ? to.plusDays(1).atStartOfDay() : null,
+                minAmount, maxAmount);
+        OrderPage page = orderService.findConsolePage(filter, after, before, orderPageSize);
+        long total = orderService.approximateCount(filter);
+        
+        // 翻页链接保留筛选条件
+        String filterQuery = UriComponentsBuilder.newInstance()
+            .queryParamIfPresent("status", Optional.ofNullable(filter.getStatus()))
+            .queryParamIfPresent("userId", Optional.ofNullable(userId))
+            .queryParamIfPresent("from", Optional.ofNullable(from))
+            .queryParamIfPresent("to", Optional.ofNullable(to))
+            .queryParamIfPresent("minAmount", Optional.ofNullable(minAmount))
+            .queryParamIfPresent("maxAmount", Optional.ofNullable(maxAmount))
+            .encode()
+            .build()
+            .getQuery();
+        
+        model.addAttribute("orders", page.getItems());
+        model.addAttribute("page", page);
+        model.addAttribute("filter", filter);
+        model.addAttribute("from", from);
+        model.addAttribute("to", to);
+        model.addAttribute("filterQuery", filterQuery == null ? "" : filterQuery);
+        // 无筛选时是表统计信息的估算值，不设上限；有筛选时最多数到上限
+        boolean estimated = filter.isEmpty();
+        boolean capped = !estimated && total > OrderService.CONSOLE_COUNT_CAP;
+        model.addAttribute("total", capped ? OrderService.CONSOLE_COUNT_CAP : total);
+        model.addAttribute("totalCapped", capped);
+        model.addAttribute("totalEstimated", estimated);
         return "admin/orders";
     }
     
+    /**
+     * 导出订单及明细（CSV 或 JSONL），按下单日期筛选，边查询边写出
+     * 导出中断时，用已完整写出的最后一个订单 ID 作为 afterId 继续
+     */
+    @GetMapping("/orders/export")
+    public void exportOrders(@RequestParam(value = "format", defaultValue = "csv") String format,
+                             @RequestParam(value = "from", required = false)
+                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                             @RequestParam(value = "to", required = false)
+                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                             @RequestParam(value = "afterId", defaultValue = "0") long afterId,
+                             HttpServletResponse response) throws IOException {
+        boolean jsonl = "jsonl".equalsIgnoreCase(format);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentType(jsonl ? "application/x-ndjson" : "text/csv");
+        response.setHeader("Content-Disposition", "attachment; filename=orders." + (jsonl ? "jsonl" : "csv"));
+        // 结束日期包含当天
+        orderExportService.exportOrders(response.getWriter(), format,
+                from != null ? from.atStartOfDay() : null,
+                to != null ? to.plusDays(1).atStartOfDay() : null,
+                afterId);
+    }
+    
     /**
      * 更新订单状态
      */
@@ -135,11 +307,11 @@ public class AdminController {
                 throw new RuntimeException("订单不存在");
             }
 
-            String oldStatus = order.getStatus();
             User user = userService.findById(order.getUserId());
 
-            // 更新订单状态（获取更新后的订单对象）
-            Order updatedOrder = orderService.updateStatus(id, status);
+            // 按状态机更新订单状态（比较并交换），返回实际的原状态
+            String oldStatus = orderService.transition(id, OrderStatus.parse(status)).name();
+            Order updatedOrder = orderService.findById(id);
 
             // 发送邮件通知
             if (user != null && !oldStatus.equals(status)) {
@@ -157,20 +329,15 @@ public class AdminController {
     */
     @GetMapping("/orders/{id}")
     public String viewOrderDetail(@PathVariable("id") Long id, Model model) {
-        Order order = orderService.findById(id);
+        // 订单、明细、用户一条查询加载
+        Order order = orderService.findDetail(id, null, true);
         if (order == null) {
             return "redirect:/admin/orders";
         }
     
-        // 获取订单明细
-        List<OrderItem> orderItems = orderService.findOrderItems(id);
-    
-        // 获取用户信息
-        User user = userService.findById(order.getUserId());
-    
         model.addAttribute("order", order);
-        model.addAttribute("orderItems", orderItems);
-        model.addAttribute("user", user);
+        model.addAttribute("orderItems", order.getOrderItems());
+        model.addAttribute("user", order.getUser());
     
         return "admin/order-detail";
     }
@@ -178,65 +345,25 @@ public class AdminController {
     // ==================== 销售统计 ====================
     
     /**
-     * 销售统计页面
+     * 销售统计页面（读取销售计数器）
      */
     @GetMapping("/stats")
     public String statistics(Model model) {
-        // 总体统计
-        BigDecimal totalSales = orderService.getTotalSales();
-        long totalOrders = orderService.getTotalOrders();
-        long paidOrders = orderService.getPaidOrderCount();
-
-        // 各状态订单金额统计
-        BigDecimal pendingSales = orderService.getSalesByStatus("PENDING");
-        BigDecimal paidSales = orderService.getSalesByStatus("PAID");
-        BigDecimal shippedSales = orderService.getSalesByStatus("SHIPPED");
-        BigDecimal completedSales = orderService.getSalesByStatus("COMPLETED");
-        BigDecimal cancelledSales = orderService.getSalesByStatus("CANCELLED");
-
-        // 各状态订单数量统计
-        long pendingCount = orderService.countByStatus("PENDING");
-        long paidCount = orderService.countByStatus("PAID");
-        long shippedCount = orderService.countByStatus("SHIPPED");
-        long completedCount = orderService.countByStatus("COMPLETED");
-        long cancelledCount = orderService.countByStatus("CANCELLED");
-
-        // 本月统计
-        long monthOrders = orderService.getOrdersThisMonth();
-        BigDecimal monthSales = orderService.getSalesThisMonth();
-
-        // 商品销售统计
-        List<ProductSalesDTO> productSales = orderService.getProductSalesStatistics();
-
-        // 传递数据到视图
-        model.addAttribute("totalSales", totalSales);
-        model.addAttribute("totalOrders", totalOrders);
-        model.addAttribute("paidOrders", paidOrders);
-
-        model.addAttribute("pendingSales", pendingSales);
-        model.addAttribute("paidSales", paidSales);
-        model.addAttribute("shippedSales", shippedSales);
-        model.addAttribute("completedSales", completedSales);
-        model.addAttribute("cancelledSales", cancelledSales);
-
-        model.addAttribute("pendingCount", pendingCount);
-        model.addAttribute("paidCount", paidCount);
-        model.addAttribute("shippedCount", shippedCount);
-        model.addAttribute("completedCount", completedCount);
-        model.addAttribute("cancelledCount", cancelledCount);
-
-        model.addAttribute("monthOrders", monthOrders);
-        model.addAttribute("monthSales", monthSales);
-
-        model.addAttribute("productSales", productSales);
-
+        model.addAttribute("stats", salesStatsService.getDashboard());
         return "admin/stats";
     }
 
     /**
-     * 新增：根据状态统计订单数（供内部使用）
+     * 从订单数据重建销售计数器
      */
-    private long countByStatus(String status) {
-        return orderService.countByStatus(status);
+    @PostMapping("/stats/rebuild")
+    public String rebuildStats(RedirectAttributes redirectAttributes) {
+        try {
+            salesStatsService.rebuildCounters();
+            redirectAttributes.addFlashAttribute("message", "销售统计已重新计算");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "重新计算失败：" + e.getMessage());
+        }
+        return "redirect:/admin/stats";
     }
 }
\ No newline at end of file
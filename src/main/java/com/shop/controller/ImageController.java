@@ -0,0 +1,78 @@
+package com.shop.controller;
+
+import com.shop.service.ImageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 商品图片访问
+ * 文件名是内容哈希，内容不会变化，所以返回一年的 immutable 缓存；
+ * Tomcat 支持 sendfile 时交给容器零拷贝发送，否则用 FileChannel.transferTo 写出，都不经过堆内存中转
+ */
+@Controller
+public class ImageController {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private ImageService imageService;
+
+    @GetMapping("/images/{variant}/{fileName:.+}")
+    public void image(@PathVariable("variant") String variant,
+                      @PathVariable("fileName") String fileName,
+                      HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        Path path = imageService.resolve(variant, fileName);
+        if (path == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // 缩略图还没生成时临时返回原图，不能让浏览器长期缓存
+        boolean exact = path.getParent().getFileName().toString().equals(variant);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, exact ? "public, max-age=31536000, immutable" : "no-cache");
+        response.setContentType(contentType(fileName));
+        long length = Files.size(path);
+        response.setContentLengthLong(length);
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return;
+        }
+
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < length) {
+                position += file.transferTo(position, length - position, out);
+            }
+        }
+    }
+
+    private String contentType(String fileName) {
+        if (fileName.endsWith(".png")) {
+            return "image/png";
+        }
+        if (fileName.endsWith(".gif")) {
+            return "image/gif";
+        }
+        return "image/jpeg";
+    }
+}
@@ -1,11 +1,16 @@
 package com.shop.controller;
 
+import com.shop.dto.CartItem;
+import com.shop.dto.OrderPage;
 import com.shop.entity.Order;
-import com.shop.entity.OrderItem;
 import com.shop.entity.User;
 import com.shop.service.CartService;
+import com.shop.service.FlashSaleService;
+import com.shop.service.IdempotencyService;
+import com.shop.service.OrderIntakeService;
 import com.shop.service.OrderService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Controller;
@@ -13,9 +18,14 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import com.shop.service.UserService;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 订单控制器
@@ -32,6 +42,29 @@ public class OrderController {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private FlashSaleService flashSaleService;
+    
+    @Autowired
+    private OrderIntakeService orderIntakeService;
+    
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
+    /**
+     * 抢购下单最多等待写入完成的时间（毫秒），超时后订单仍会在后台生成
+     */
+    @Value("${shop.flash-sale.wait-timeout-ms:5000}")
+    private long flashSaleWaitMs;
+    
+    /**
+     * 我的订单每页条数
+     */
+    @Value("${shop.orders.page-size:20}")
+    private int pageSize;
+    
+    private static final List<String> ORDER_STATUSES = List.of("PENDING", "PAID", "SHIPPED", "COMPLETED", "CANCELLED");
+    
     /**
      * 确认订单页面
      * @AuthenticationPrincipal 获取当前登录用户
@@ -45,6 +78,8 @@ public class OrderController {
         
         model.addAttribute("cartItems", cartService.getCart());
         model.addAttribute("cartTotal", cartService.getCartTotal());
+        // 一次性令牌，重复提交同一个表单时返回第一次生成的订单
+        model.addAttribute("idempotencyKey", idempotencyService.newKey());
         return "order-confirm";
     }
     
@@ -53,23 +88,96 @@ public class OrderController {
      */
     @PostMapping("/order/submit")
     public String submitOrder(@AuthenticationPrincipal UserDetails userDetails,
+                             @RequestParam(value = "idempotencyKey", required = false) String idempotencyKey,
                              RedirectAttributes redirectAttributes) {
+        String key = idempotencyService.isValid(idempotencyKey) ? idempotencyKey : null;
+        User user = null;
         try {
             // 获取当前用户
-            User user = userService.findByUsername(userDetails.getUsername());
+            user = userService.findByUsername(userDetails.getUsername());
+            
+            // 同一个表单已经生成过订单（重复点击、刷新重发）
+            Long existing = idempotencyService.findOrderId(IdempotencyService.SUBMIT, key, user.getId());
+            if (existing != null) {
+                redirectAttributes.addFlashAttribute("message", "订单已提交，请勿重复提交。订单号：" + existing);
+                return "redirect:/order/" + existing;
+            }
             
-            // 创建订单
-            Order order = orderService.createOrder(user);
+            // 创建订单（购物车中有抢购商品时走内存令牌 + 排队写入）
+            List<CartItem> cart = cartService.getCart();
+            Order order;
+            if (flashSaleService.isFlashSale(cart)) {
+                CompletableFuture<Order> future = flashSaleService.submit(user.getId(), cart, key);
+                try {
+                    order = future.get(flashSaleWaitMs, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    cartService.clearCart();
+                    redirectAttributes.addFlashAttribute("message", "抢购成功，订单正在生成，请稍后在我的订单中查看");
+                    return "redirect:/orders";
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                                                                   : new RuntimeException("下单失败，请重试");
+                }
+                cartService.clearCart();
+            } else if (orderIntakeService.isEnabled()) {
+                // 异步下单：命令入队后立即返回处理中页面
+                String requestId = orderIntakeService.submit(user.getId(), cart, key);
+                cartService.clearCart();
+                return "redirect:/order/request/" + requestId;
+            } else {
+                order = orderService.createOrder(user, key);
+            }
             
             redirectAttributes.addFlashAttribute("message", "订单提交成功！订单号：" + order.getId());
             return "redirect:/order/" + order.getId();
             
         } catch (Exception e) {
+            // 并发的重复提交在令牌上失败，返回先到的请求生成的订单
+            Long existing = user == null ? null
+                : idempotencyService.findOrderId(IdempotencyService.SUBMIT, key, user.getId());
+            if (existing != null) {
+                redirectAttributes.addFlashAttribute("message", "订单已提交，请勿重复提交。订单号：" + existing);
+                return "redirect:/order/" + existing;
+            }
             redirectAttributes.addFlashAttribute("error", e.getMessage());
             return "redirect:/cart";
         }
     }
     
+    /**
+     * 异步下单的处理页面：订单写入后跳转到订单详情，失败时恢复购物车并提示原因
+     */
+    @GetMapping("/order/request/{requestId}")
+    public String orderRequest(@PathVariable("requestId") String requestId,
+                               @AuthenticationPrincipal UserDetails userDetails,
+                               Model model,
+                               RedirectAttributes redirectAttributes) {
+        User user = userService.findByUsername(userDetails.getUsername());
+        
+        Order order = orderIntakeService.findOrder(requestId);
+        if (order != null) {
+            if (!order.getUserId().equals(user.getId())) {
+                return "redirect:/orders";
+            }
+            redirectAttributes.addFlashAttribute("message", "订单提交成功！订单号：" + order.getId());
+            return "redirect:/order/" + order.getId();
+        }
+        
+        OrderIntakeService.OrderCommand command = orderIntakeService.getCommand(requestId);
+        if (command == null || !command.getUserId().equals(user.getId())) {
+            return "redirect:/orders";
+        }
+        if (command.getError() != null) {
+            cartService.restoreCart(command.getItems());
+            orderIntakeService.forget(requestId);
+            redirectAttributes.addFlashAttribute("error", command.getError());
+            return "redirect:/cart";
+        }
+        
+        model.addAttribute("requestId", requestId);
+        return "order-processing";
+    }
+    
     /**
      * 订单详情页面
      */
@@ -77,34 +185,36 @@ public class OrderController {
     public String orderDetail(@PathVariable("id") Long id,
                              @AuthenticationPrincipal UserDetails userDetails,
                              Model model) {
-        Order order = orderService.findById(id);
-        
+        // 订单、明细、用户一条查询加载，所有权（本人或管理员）在查询条件中检查
+        boolean admin = userDetails.getAuthorities().stream()
+            .anyMatch(authority -> "ROLE_ADMIN".equals(authority.getAuthority()));
+        Order order = orderService.findDetail(id, userDetails.getUsername(), admin);
         if (order == null) {
             return "redirect:/orders";
         }
         
-        // 验证订单是否属于当前用户（或是管理员）
-        User user = userService.findByUsername(userDetails.getUsername());
-        if (!order.getUserId().equals(user.getId()) && !"ADMIN".equals(user.getRole())) {
-            return "redirect:/orders";
-        }
-        
-        List<OrderItem> orderItems = orderService.findOrderItems(id);
-        
         model.addAttribute("order", order);
-        model.addAttribute("orderItems", orderItems);
+        model.addAttribute("orderItems", order.getOrderItems());
+        model.addAttribute("idempotencyKey", idempotencyService.newKey());
         return "order-detail";
     }
     
     /**
-     * 我的订单列表
+     * 我的订单列表（游标分页，可按状态筛选）
      */
     @GetMapping("/orders")
-    public String myOrders(@AuthenticationPrincipal UserDetails userDetails, Model model) {
+    public String myOrders(@AuthenticationPrincipal UserDetails userDetails,
+                           @RequestParam(value = "status", required = false) String status,
+                           @RequestParam(value = "after", required = false) String after,
+                           @RequestParam(value = "before", required = false) String before,
+                           Model model) {
         User user = userService.findByUsername(userDetails.getUsername());
-        List<Order> orders = orderService.findUserOrders(user.getId());
+        String statusFilter = ORDER_STATUSES.contains(status) ? status : null;
+        OrderPage page = orderService.findUserOrderPage(user.getId(), statusFilter, after, before, pageSize);
         
-        model.addAttribute("orders", orders);
+        model.addAttribute("orders", page.getItems());
+        model.addAttribute("page", page);
+        model.addAttribute("status", statusFilter);
         return "orders";
     }
     
@@ -114,21 +224,34 @@ public class OrderController {
     @PostMapping("/order/{id}/pay")
     public String payOrder(@PathVariable("id") Long id,
                           @AuthenticationPrincipal UserDetails userDetails,
+                          @RequestParam(value = "idempotencyKey", required = false) String idempotencyKey,
                           RedirectAttributes redirectAttributes) {
+        String key = idempotencyService.isValid(idempotencyKey) ? idempotencyKey : null;
+        User user = null;
         try {
+            user = userService.findByUsername(userDetails.getUsername());
+            
+            // 同一个支付表单已经处理过
+            if (id.equals(idempotencyService.findOrderId(IdempotencyService.PAY, key, user.getId()))) {
+                redirectAttributes.addFlashAttribute("message", "支付成功！");
+                return "redirect:/order/" + id;
+            }
+            
             // 验证订单所有权
             Order order = orderService.findById(id);
-            User user = userService.findByUsername(userDetails.getUsername());
-            
             if (!order.getUserId().equals(user.getId())) {
                 throw new RuntimeException("无权操作此订单");
             }
             
-            orderService.payOrder(id);
+            orderService.payOrder(id, user.getId(), key);
             redirectAttributes.addFlashAttribute("message", "支付成功！");
             
         } catch (Exception e) {
-            redirectAttributes.addFlashAttribute("error", e.getMessage());
+            if (user != null && id.equals(idempotencyService.findOrderId(IdempotencyService.PAY, key, user.getId()))) {
+                redirectAttributes.addFlashAttribute("message", "支付成功！");
+            } else {
+                redirectAttributes.addFlashAttribute("error", e.getMessage());
+            }
         }
         
         return "redirect:/order/" + id;
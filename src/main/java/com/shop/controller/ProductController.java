@@ -1,14 +1,35 @@
 package com.shop.controller;
 
+import com.shop.dto.ProductPage;
+import com.shop.dto.ProductSort;
+import com.shop.dto.ProductSummaryDTO;
+import com.shop.dto.SuggestionDTO;
 import com.shop.entity.Product;
+import com.shop.service.PageCache;
 import com.shop.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.support.RequestContextUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
  * 商品控制器
@@ -19,40 +40,99 @@ public class ProductController {
     @Autowired
     private ProductService productService;
     
+    /**
+     * 每页商品数
+     */
+    @Value("${shop.products.page-size:20}")
+    private int pageSize;
+    
     /**
      * 商品列表页面
      * Model 用于向视图传递数据
+     * category、search、inStock 可以组合筛选；after / before 为翻页游标，sort 为排序方式
      */
     @GetMapping("/products")
     public String productList(@RequestParam(value = "category", required = false) String category,
                              @RequestParam(value = "search", required = false) String search,
+                             @RequestParam(value = "inStock", defaultValue = "false") boolean inStock,
+                             @RequestParam(value = "sort", required = false) String sort,
+                             @RequestParam(value = "after", required = false) String after,
+                             @RequestParam(value = "before", required = false) String before,
+                             ServletWebRequest webRequest,
                              Model model) {
-        List<Product> products;
+        // 目录内容和查询条件都没变时直接返回 304，不查询也不渲染
+        String catalogTag = productService.getCatalogTag();
+        if (catalogTag != null) {
+            String query = Integer.toHexString(Objects.hash(category, search, inStock, sort, after, before));
+            if (checkNotModified(webRequest, "c" + catalogTag + "-" + query, -1)) {
+                return null;
+            }
+        }
+        
+        ProductSort productSort = ProductSort.from(sort);
+        ProductPage page = productService.findPage(category, search, inStock, productSort, after, before, pageSize);
         
         if (search != null && !search.isEmpty()) {
-            // 搜索商品
-            products = productService.searchByName(search);
             model.addAttribute("search", search);
-        } else if (category != null && !category.isEmpty()) {
-            // 按分类筛选
-            products = productService.findByCategory(category);
+        }
+        if (category != null && !category.isEmpty()) {
             model.addAttribute("category", category);
-        } else {
-            // 显示所有商品
-            products = productService.findAll();
         }
         
-        model.addAttribute("products", products);
+        // 翻页链接需要保留的查询条件
+        String pageQuery = UriComponentsBuilder.newInstance()
+            .queryParamIfPresent("search", Optional.ofNullable(model.getAttribute("search")))
+            .queryParamIfPresent("category", Optional.ofNullable(model.getAttribute("category")))
+            .queryParamIfPresent("inStock", inStock ? Optional.of(true) : Optional.empty())
+            .queryParam("sort", productSort.name())
+            .encode()
+            .build()
+            .getQuery();
+        
+        // 页面输出缓存按本页出现的商品做精确失效
+        List<Long> productIds = new ArrayList<>();
+        for (ProductSummaryDTO item : page.getItems()) {
+            productIds.add(item.getId());
+        }
+        webRequest.getRequest().setAttribute(PageCache.PRODUCT_IDS_ATTRIBUTE, productIds);
+        
+        model.addAttribute("products", page.getItems());
+        model.addAttribute("page", page);
+        model.addAttribute("facets", page.getFacets());
+        model.addAttribute("inStock", inStock);
+        model.addAttribute("sort", productSort);
+        model.addAttribute("sorts", ProductSort.values());
+        model.addAttribute("pageQuery", pageQuery);
         return "products";
     }
     
+    /**
+     * 搜索框自动补全（JSON）
+     * 例如：/products/suggest?q=iph → [{"text":"iPhone 15","type":"product","productId":1}, ...]
+     */
+    @GetMapping("/products/suggest")
+    @ResponseBody
+    public List<SuggestionDTO> suggest(@RequestParam("q") String q,
+                                       @RequestParam(value = "limit", defaultValue = "8") int limit) {
+        return productService.suggest(q, Math.max(1, Math.min(limit, 10)));
+    }
+    
     /**
      * 商品详情页面
      * @PathVariable 从 URL 路径获取参数
      * 例如：/products/1 → id = 1
      */
     @GetMapping("/products/{id}")
-    public String productDetail(@PathVariable("id") Long id, Model model) {
+    public String productDetail(@PathVariable("id") Long id, ServletWebRequest webRequest, Model model) {
+        // 先用 updatedAt 做条件请求校验，未修改时不加载商品
+        LocalDateTime updatedAt = productService.findUpdatedAt(id);
+        if (updatedAt != null) {
+            long lastModified = updatedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if (checkNotModified(webRequest, "p" + id + "-" + lastModified, lastModified)) {
+                return null;
+            }
+        }
+        
         Product product = productService.findById(id);
         
         if (product == null) {
@@ -60,6 +140,31 @@ public class ProductController {
         }
         
         model.addAttribute("product", product);
+        model.addAttribute("description", productService.getDescription(product));
         return "product-detail";
     }
+    
+    /**
+     * 条件请求（If-None-Match / If-Modified-Since）校验，未修改时写出 304 并返回 true
+     * 页面内容还取决于登录用户（导航栏、CSRF 令牌），所以 ETag 中带上用户和 Session；
+     * 有一次性提示消息（flash）时不做校验
+     */
+    private boolean checkNotModified(ServletWebRequest webRequest, String version, long lastModified) {
+        HttpServletRequest request = webRequest.getRequest();
+        if (RequestContextUtils.getInputFlashMap(request) != null) {
+            return false;
+        }
+        
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        boolean anonymous = auth == null || auth instanceof AnonymousAuthenticationToken;
+        String viewer = anonymous ? "anon"
+                      : Integer.toHexString(Objects.hash(auth.getName(), request.getRequestedSessionId()));
+        
+        // 允许浏览器/CDN 保存页面，但每次使用前都要重新校验
+        HttpServletResponse response = webRequest.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, anonymous ? "public, no-cache" : "private, no-cache");
+        }
+        return webRequest.checkNotModified("W/\"" + version + "-" + viewer + "\"", lastModified);
+    }
 }
\ No newline at end of file
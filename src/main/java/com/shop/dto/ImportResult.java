@@ -0,0 +1,33 @@
+package com.shop.dto;
+
+import lombok.Data;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 商品批量导入结果（导入过程中也作为进度查询）
+ */
+@Data
+public class ImportResult {
+    
+    /**
+     * 最多保留的错误明细条数
+     */
+    public static final int MAX_ERRORS = 100;
+    
+    private volatile long total;      // 已读取的数据行数
+    private volatile long imported;   // 写入成功的行数
+    private volatile long failed;     // 校验或写入失败的行数
+    private volatile boolean finished;
+    private final List<String> errors = new CopyOnWriteArrayList<>();  // 错误明细（行号 + 原因）
+    
+    /**
+     * 记录一行错误
+     */
+    public void addError(long line, String message) {
+        failed++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("第 " + line + " 行：" + message);
+        }
+    }
+}
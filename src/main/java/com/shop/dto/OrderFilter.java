@@ -0,0 +1,30 @@
+package com.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 管理后台订单筛选条件（字段为 null 时不筛选）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderFilter {
+    private String status;              // 订单状态
+    private Long userId;                // 用户 ID
+    private LocalDateTime createdFrom;  // 下单时间下限（含）
+    private LocalDateTime createdTo;    // 下单时间上限（不含）
+    private BigDecimal minAmount;       // 订单金额下限（含）
+    private BigDecimal maxAmount;       // 订单金额上限（含）
+    
+    /**
+     * 是否没有任何筛选条件
+     */
+    public boolean isEmpty() {
+        return status == null && userId == null && createdFrom == null && createdTo == null
+            && minAmount == null && maxAmount == null;
+    }
+}
\ No newline at end of file
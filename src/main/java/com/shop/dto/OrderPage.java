@@ -0,0 +1,18 @@
+package com.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * 订单列表分页结果（游标分页，按下单时间从新到旧）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPage {
+    private List<OrderSummaryDTO> items;  // 当前页订单（列表投影）
+    private String prevCursor;  // 上一页（更新的订单）游标，没有时为 null
+    private String nextCursor;  // 下一页（更早的订单）游标，没有时为 null
+}
\ No newline at end of file
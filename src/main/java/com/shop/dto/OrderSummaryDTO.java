@@ -0,0 +1,29 @@
+package com.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单列表投影 DTO
+ * "我的订单"列表只需要这些列，不加载订单明细集合，也不进入 Hibernate 持久化上下文
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryDTO {
+    private Long id;                  // 订单 ID
+    private Long userId;              // 用户 ID（管理后台使用）
+    private BigDecimal totalPrice;    // 订单金额
+    private String status;            // 订单状态
+    private LocalDateTime createdAt;  // 下单时间
+    
+    /**
+     * 不带用户 ID 的投影（我的订单使用）
+     */
+    public OrderSummaryDTO(Long id, BigDecimal totalPrice, String status, LocalDateTime createdAt) {
+        this(id, null, totalPrice, status, createdAt);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.Map;
+
+/**
+ * 商品列表分面统计 DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductFacets {
+    private Map<String, Integer> categoryCounts;  // 分类 -> 商品数（当前搜索/库存条件下）
+    private int inStockCount;                     // 当前条件下有库存的商品数
+}
@@ -0,0 +1,20 @@
+package com.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * 商品列表分页结果（游标分页）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPage {
+    private List<ProductSummaryDTO> items;  // 当前页商品（列表投影）
+    private String prevCursor;     // 上一页游标（没有上一页时为 null）
+    private String nextCursor;     // 下一页游标（没有下一页时为 null）
+    private long total;            // 符合条件的商品总数
+    private ProductFacets facets;  // 分面统计（目录未启用时为 null）
+}
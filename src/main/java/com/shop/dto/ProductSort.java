@@ -0,0 +1,83 @@
+package com.shop.dto;
+
+import com.shop.entity.Product;
+import java.math.BigDecimal;
+import java.util.Comparator;
+
+/**
+ * 商品列表排序方式
+ * 每种排序都以商品 ID 作为次序键，保证顺序唯一，便于游标（keyset）分页
+ */
+public enum ProductSort {
+
+    DEFAULT("默认排序", Comparator.comparing(Product::getId)),
+    NEWEST("最新上架", Comparator.comparing(Product::getId).reversed()),
+    PRICE_ASC("价格从低到高", Comparator.comparing(Product::getPrice).thenComparing(Product::getId)),
+    PRICE_DESC("价格从高到低", Comparator.comparing(Product::getPrice).thenComparing(Product::getId).reversed());
+
+    private final String label;
+    private final Comparator<Product> comparator;
+
+    ProductSort(String label, Comparator<Product> comparator) {
+        this.label = label;
+        this.comparator = comparator;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public Comparator<Product> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * 是否按价格排序（游标需要同时记录价格和 ID）
+     */
+    public boolean isByPrice() {
+        return this == PRICE_ASC || this == PRICE_DESC;
+    }
+
+    /**
+     * 生成商品在当前排序下的游标，格式：ID 或 价格_ID
+     */
+    public String cursorOf(Long id, BigDecimal price) {
+        return isByPrice() ? price.toPlainString() + "_" + id : String.valueOf(id);
+    }
+
+    /**
+     * 解析游标为只包含排序键的商品对象，格式错误时返回 null
+     */
+    public Product parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            Product probe = new Product();
+            if (isByPrice()) {
+                int sep = cursor.lastIndexOf('_');
+                probe.setPrice(new BigDecimal(cursor.substring(0, sep)));
+                probe.setId(Long.parseLong(cursor.substring(sep + 1)));
+            } else {
+                probe.setId(Long.parseLong(cursor));
+            }
+            return probe;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析排序参数，无法识别时使用默认排序
+     */
+    public static ProductSort from(String value) {
+        if (value != null) {
+            for (ProductSort sort : values()) {
+                if (sort.name().equalsIgnoreCase(value)) {
+                    return sort;
+                }
+            }
+        }
+        return DEFAULT;
+    }
+}
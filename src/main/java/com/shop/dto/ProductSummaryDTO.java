@@ -0,0 +1,50 @@
+package com.shop.dto;
+
+import com.shop.entity.Product;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+
+/**
+ * 商品列表投影 DTO
+ * 列表页只需要这些列，不加载 TEXT 类型的完整描述，也不进入 Hibernate 持久化上下文
+ * 详情页和编辑页仍使用完整的 Product 实体
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSummaryDTO {
+    
+    /**
+     * 描述摘要的最大长度（字符）
+     */
+    public static final int DESCRIPTION_PREFIX_LENGTH = 100;
+    
+    private Long id;                   // 商品 ID
+    private String name;               // 商品名称
+    private BigDecimal price;          // 商品价格
+    private Integer stock;             // 库存
+    private String imageUrl;           // 商品图片
+    private String category;           // 分类
+    private String descriptionPrefix;  // 描述摘要（可能为 null）
+    
+    /**
+     * 不带描述摘要的投影（管理后台列表使用）
+     */
+    public ProductSummaryDTO(Long id, String name, BigDecimal price, Integer stock,
+                             String imageUrl, String category) {
+        this(id, name, price, stock, imageUrl, category, null);
+    }
+    
+    /**
+     * 从内存目录中的商品生成投影（描述可能不在商品对象中，由调用方传入）
+     */
+    public static ProductSummaryDTO from(Product product, String description) {
+        if (description != null && description.length() > DESCRIPTION_PREFIX_LENGTH) {
+            description = description.substring(0, DESCRIPTION_PREFIX_LENGTH);
+        }
+        return new ProductSummaryDTO(product.getId(), product.getName(), product.getPrice(),
+                product.getStock(), product.getImageUrl(), product.getCategory(), description);
+    }
+}
@@ -0,0 +1,42 @@
+package com.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 销售统计页面数据
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesDashboardDTO {
+    private long totalOrders;                   // 订单总数（所有状态）
+    private long paidOrders;                    // 有效订单数（已支付、已发货、已完成）
+    private BigDecimal totalSales;              // 总销售额（已支付、已发货、已完成）
+    private BigDecimal totalAmount;             // 所有状态的订单金额合计
+    private long monthOrders;                   // 本月订单数
+    private BigDecimal monthSales;              // 本月销售额（已支付、已发货、已完成）
+    private Map<String, Long> statusCounts;     // 状态 -> 订单数
+    private Map<String, BigDecimal> statusSales;  // 状态 -> 订单金额
+    private List<ProductSalesDTO> productSales;  // 商品销售排行
+
+    /**
+     * 某个状态的订单数
+     */
+    public long countOf(String status) {
+        Long count = statusCounts.get(status);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 某个状态的订单金额
+     */
+    public BigDecimal salesOf(String status) {
+        BigDecimal sales = statusSales.get(status);
+        return sales != null ? sales : BigDecimal.ZERO;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.shop.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 搜索自动补全建议 DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+    private String text;        // 建议文本（商品名称或分类名称）
+    private String type;        // product 或 category
+    private Long productId;     // 商品 ID（分类建议为 null）
+}
\ No newline at end of file
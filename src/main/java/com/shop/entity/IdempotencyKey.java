@@ -0,0 +1,43 @@
+package com.shop.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 幂等键实体类
+ * 对应数据库 idempotency_keys 表，记录已处理的提交/支付请求及其结果（订单 ID），
+ * 主键唯一约束保证多个节点上同一个键只处理一次
+ */
+@Data
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+    @Index(name = "idx_idempotency_created", columnList = "created_at")  // 清理过期的键
+})
+public class IdempotencyKey {
+    
+    /**
+     * 表单中的一次性令牌
+     */
+    @Id
+    @Column(name = "idempotency_key", length = 36)
+    private String idempotencyKey;
+    
+    /**
+     * 操作类型：SUBMIT（提交订单）、PAY（支付订单）
+     */
+    @Column(nullable = false, length = 20)
+    private String operation;
+    
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+    
+    /**
+     * 处理结果对应的订单 ID
+     */
+    @Column(name = "order_id")
+    private Long orderId;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
\ No newline at end of file
@@ -2,6 +2,8 @@ package com.shop.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -13,16 +15,42 @@ import java.util.List;
  */
 @Data
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+    // 查找超时未支付订单；带上 total_price 后销售统计只扫描索引（取代 idx_orders_status_created）
+    @Index(name = "idx_orders_status_created_total", columnList = "status, created_at, total_price"),
+    @Index(name = "idx_orders_created", columnList = "created_at, id"),  // 管理后台订单列表（游标分页、按日期筛选）
+    @Index(name = "idx_orders_user_created", columnList = "user_id, created_at, id"),  // 我的订单（游标分页）
+    @Index(name = "idx_orders_user_status_created", columnList = "user_id, status, created_at, id")  // 我的订单按状态筛选
+})
 public class Order {
     
+    /**
+     * 主键用池化序列分配（MySQL 上由 Hibernate 用 orders_seq 表模拟序列），一次取 50 个 ID，
+     * 插入时不需要回读自增 ID，JDBC 批量写入才能生效
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "user_id", nullable = false)
     private Long userId;
     
+    /**
+     * 下单用户（只读，外键仍由 userId 维护），订单详情页用 fetch join 一起加载
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", insertable = false, updatable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private User user;
+    
+    /**
+     * 下单请求 ID（异步下单时由提交请求生成），唯一约束保证同一请求重试时只生成一个订单
+     */
+    @Column(name = "request_id", length = 36, unique = true)
+    private String requestId;
+    
     @Column(name = "total_price", nullable = false, precision = 10, scale = 2)
     private BigDecimal totalPrice;
     
@@ -0,0 +1,58 @@
+package com.shop.entity;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * 订单状态及允许的状态转换
+ * PENDING → PAID → SHIPPED → COMPLETED，PENDING → CANCELLED；其他转换一律拒绝
+ * orders.status 列仍保存枚举名称字符串
+ */
+public enum OrderStatus {
+    PENDING("待支付"),
+    PAID("已支付"),
+    SHIPPED("已发货"),
+    COMPLETED("已完成"),
+    CANCELLED("已取消");
+
+    private final String label;
+
+    OrderStatus(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * 当前状态能否直接转换为 target
+     */
+    public boolean canTransitionTo(OrderStatus target) {
+        return nextStates().contains(target);
+    }
+
+    private Set<OrderStatus> nextStates() {
+        switch (this) {
+            case PENDING:
+                return EnumSet.of(PAID, CANCELLED);
+            case PAID:
+                return EnumSet.of(SHIPPED);
+            case SHIPPED:
+                return EnumSet.of(COMPLETED);
+            default:
+                return EnumSet.noneOf(OrderStatus.class);
+        }
+    }
+
+    /**
+     * 解析状态名称，未知状态抛出异常
+     */
+    public static OrderStatus parse(String name) {
+        try {
+            return OrderStatus.valueOf(name);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new RuntimeException("未知的订单状态：" + name);
+        }
+    }
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.shop.entity;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
@@ -11,7 +12,10 @@ import java.time.LocalDateTime;
  */
 @Data
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+    @Index(name = "idx_products_price_id", columnList = "price, id"),  // 按价格游标分页
+    @Index(name = "idx_products_category", columnList = "category")    // 按分类筛选
+})
 public class Product {
     
     @Id
@@ -24,6 +28,9 @@ public class Product {
     @Column(columnDefinition = "TEXT")  // 长文本类型
     private String description;
     
+    @Transient  // 内存目录中描述存放在 DescriptionStore，这里只保存句柄（不对应数据库列）
+    private Long descriptionRef;
+    
     @Column(nullable = false, precision = 10, scale = 2)  // DECIMAL(10,2)
     private BigDecimal price;
     
@@ -36,6 +43,10 @@ public class Product {
     @Column(length = 50)
     private String category;
     
+    @Column(name = "flash_sale", nullable = false)
+    @ColumnDefault("0")
+    private Boolean flashSale = false;  // 是否参加限时抢购（下单走内存库存令牌 + 排队写入）
+    
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
     
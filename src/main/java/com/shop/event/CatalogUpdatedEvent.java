@@ -0,0 +1,54 @@
+package com.shop.event;
+
+import com.shop.entity.Product;
+import com.shop.service.CatalogSnapshot;
+
+/**
+ * 目录快照更新事件
+ * 由 CatalogService 在替换快照后同步发布，供搜索索引等派生结构增量维护
+ * 全量重新加载时 reload 为 true，previous/current 均为 null
+ */
+public class CatalogUpdatedEvent {
+
+    private final CatalogSnapshot snapshot;
+    private final Product previous;
+    private final Product current;
+    private final boolean reload;
+
+    private CatalogUpdatedEvent(CatalogSnapshot snapshot, Product previous, Product current, boolean reload) {
+        this.snapshot = snapshot;
+        this.previous = previous;
+        this.current = current;
+        this.reload = reload;
+    }
+
+    public static CatalogUpdatedEvent reloaded(CatalogSnapshot snapshot) {
+        return new CatalogUpdatedEvent(snapshot, null, null, true);
+    }
+
+    public static CatalogUpdatedEvent changed(CatalogSnapshot snapshot, Product previous, Product current) {
+        return new CatalogUpdatedEvent(snapshot, previous, current, false);
+    }
+
+    public CatalogSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 变更前的商品（新增时为 null）
+     */
+    public Product getPrevious() {
+        return previous;
+    }
+
+    /**
+     * 变更后的商品（删除时为 null）
+     */
+    public Product getCurrent() {
+        return current;
+    }
+
+    public boolean isReload() {
+        return reload;
+    }
+}
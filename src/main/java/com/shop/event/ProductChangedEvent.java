@@ -0,0 +1,19 @@
+package com.shop.event;
+
+/**
+ * 商品变更事件
+ * 由 ProductService 在新增、修改、删除商品或调整库存时发布，
+ * 监听方在事务提交后根据商品 ID 重新加载最新数据
+ */
+public class ProductChangedEvent {
+
+    private final Long productId;
+
+    public ProductChangedEvent(Long productId) {
+        this.productId = productId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+}
@@ -14,6 +14,11 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
      */
     List<OrderItem> findByOrderId(Long orderId);
     
+    /**
+     * 查找多个订单的所有明细
+     */
+    List<OrderItem> findByOrderIdIn(List<Long> orderIds);
+    
     /**
      * 统计商品销售情况（只统计已支付、已发货、已完成的订单）
      * 返回：商品ID、商品名称、销售数量、销售金额
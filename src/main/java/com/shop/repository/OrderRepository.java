@@ -1,16 +1,24 @@
 package com.shop.repository;
 
+import com.shop.dto.OrderSummaryDTO;
 import com.shop.entity.Order;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface OrderRepository extends JpaRepository<Order, Long> {
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderRepositoryCustom {
     
     List<Order> findByUserIdOrderByCreatedAtDesc(Long userId);
     
@@ -18,6 +26,139 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     
     long countByUserId(Long userId);
     
+    Optional<Order> findByRequestId(String requestId);
+    
+    /**
+     * 订单详情：一条语句同时加载订单、订单明细和下单用户；
+     * 所有权检查放在查询条件中，订单不存在或不属于该用户（非管理员）时返回空
+     */
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.user u LEFT JOIN FETCH o.orderItems " +
+           "WHERE o.id = :id AND (u.username = :username OR :admin = TRUE)")
+    Optional<Order> findDetail(@Param("id") Long id,
+                               @Param("username") String username,
+                               @Param("admin") boolean admin);
+    
+    /**
+     * InnoDB 统计信息中的订单表行数（估算值，不扫描表）
+     */
+    @Query(value = "SELECT TABLE_ROWS FROM information_schema.TABLES " +
+                   "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'orders'", nativeQuery = true)
+    Long estimateRowCount();
+    
+    // ==================== 我的订单（游标分页） ====================
+    // 按 (created_at, id) 从新到旧；每页条数由 Pageable 控制（只用 page 0，不做 COUNT）
+    
+    String SUMMARY_COLUMNS = "new com.shop.dto.OrderSummaryDTO(o.id, o.totalPrice, o.status, o.createdAt)";
+    
+    /**
+     * 比游标更早的订单，从新到旧
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Order o " +
+           "WHERE o.userId = :userId " +
+           "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummaryDTO> findUserPageOlder(@Param("userId") Long userId,
+                                             @Param("createdAt") LocalDateTime createdAt,
+                                             @Param("id") Long id,
+                                             Pageable pageable);
+    
+    /**
+     * 比游标更新的订单，从旧到新（调用方反转）
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Order o " +
+           "WHERE o.userId = :userId " +
+           "AND (o.createdAt > :createdAt OR (o.createdAt = :createdAt AND o.id > :id)) " +
+           "ORDER BY o.createdAt ASC, o.id ASC")
+    List<OrderSummaryDTO> findUserPageNewer(@Param("userId") Long userId,
+                                            @Param("createdAt") LocalDateTime createdAt,
+                                            @Param("id") Long id,
+                                            Pageable pageable);
+    
+    /**
+     * 指定状态、比游标更早的订单，从新到旧
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Order o " +
+           "WHERE o.userId = :userId AND o.status = :status " +
+           "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+           "ORDER BY o.createdAt DESC, o.id DESC")
+    List<OrderSummaryDTO> findUserPageByStatusOlder(@Param("userId") Long userId,
+                                                     @Param("status") String status,
+                                                     @Param("createdAt") LocalDateTime createdAt,
+                                                     @Param("id") Long id,
+                                                     Pageable pageable);
+    
+    /**
+     * 指定状态、比游标更新的订单，从旧到新（调用方反转）
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Order o " +
+           "WHERE o.userId = :userId AND o.status = :status " +
+           "AND (o.createdAt > :createdAt OR (o.createdAt = :createdAt AND o.id > :id)) " +
+           "ORDER BY o.createdAt ASC, o.id ASC")
+    List<OrderSummaryDTO> findUserPageByStatusNewer(@Param("userId") Long userId,
+                                                    @Param("status") String status,
+                                                    @Param("createdAt") LocalDateTime createdAt,
+                                                    @Param("id") Long id,
+                                                    Pageable pageable);
+    
+    // ==================== 财务导出 ====================
+    // 订单与明细逐行流式读取（只读标量，不进入持久化上下文），必须在只读事务中消费并关闭 Stream
+    
+    // Integer.MIN_VALUE：MySQL 驱动逐行流式返回，而不是一次读入全部结果
+    String STREAMING_FETCH_SIZE = "-2147483648";
+    
+    String EXPORT_COLUMNS = "o.id AS order_id, o.user_id, o.status, o.total_price, o.created_at, " +
+                            "oi.product_id, oi.product_name, oi.price, oi.quantity, oi.subtotal";
+    
+    String EXPORT_WHERE = " WHERE o.created_at >= :from AND o.created_at < :to AND o.id > :afterId";
+    
+    /**
+     * 下单时间范围内、订单 ID 大于 afterId 的订单明细行（没有明细的订单占一行），按订单 ID 排序
+     */
+    @Query(value = "SELECT " + EXPORT_COLUMNS + " FROM orders o LEFT JOIN order_items oi ON oi.order_id = o.id" +
+                   EXPORT_WHERE + " ORDER BY o.id", nativeQuery = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE))
+    Stream<Object[]> streamExport(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                  @Param("afterId") Long afterId);
+    
+    /**
+     * 同 streamExport，只读已归档的订单
+     */
+    @Query(value = "SELECT " + EXPORT_COLUMNS +
+                   " FROM orders_archive o LEFT JOIN order_items_archive oi ON oi.order_id = o.id" +
+                   EXPORT_WHERE + " ORDER BY o.id", nativeQuery = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = STREAMING_FETCH_SIZE))
+    Stream<Object[]> streamArchivedExport(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                          @Param("afterId") Long afterId);
+    
+    /**
+     * 在线表中 ID 不大于 maxId 的订单明细行（早于归档界限但尚未完结、没有归档的订单，数量很少），按订单 ID 排序
+     */
+    @Query(value = "SELECT " + EXPORT_COLUMNS + " FROM orders o LEFT JOIN order_items oi ON oi.order_id = o.id" +
+                   EXPORT_WHERE + " AND o.id <= :maxId ORDER BY o.id", nativeQuery = true)
+    List<Object[]> findExportRowsUpTo(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                      @Param("afterId") Long afterId, @Param("maxId") Long maxId);
+    
+    /**
+     * 已归档订单的最大 ID（没有归档订单时为 null）
+     */
+    @Query(value = "SELECT MAX(id) FROM orders_archive", nativeQuery = true)
+    Long findMaxArchivedId();
+    
+    /**
+     * 按状态汇总：状态、订单数、金额、本月订单数、本月金额（一次扫描，本月数据用条件聚合）
+     */
+    @Query("SELECT o.status, COUNT(o), COALESCE(SUM(o.totalPrice), 0), " +
+           "SUM(CASE WHEN o.createdAt >= :startOfMonth THEN 1 ELSE 0 END), " +
+           "COALESCE(SUM(CASE WHEN o.createdAt >= :startOfMonth THEN o.totalPrice ELSE 0 END), 0) " +
+           "FROM Order o GROUP BY o.status")
+    List<Object[]> aggregateByStatus(@Param("startOfMonth") LocalDateTime startOfMonth);
+    
+    /**
+     * 销售计数器需要的订单字段：订单 ID、金额、下单时间
+     */
+    @Query("SELECT o.id, o.totalPrice, o.createdAt FROM Order o WHERE o.id IN :ids")
+    List<Object[]> findCounterRows(@Param("ids") List<Long> ids);
+    
     /**
      * 计算总销售额（已支付、已发货、已完成）
      */
@@ -62,4 +203,34 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
      * 统计用户某个状态的订单数
      */
     long countByUserIdAndStatus(Long userId, String status);
+    
+    /**
+     * 只读取订单状态（不加载实体，不受持久化上下文缓存影响）
+     */
+    @Query("SELECT o.status FROM Order o WHERE o.id = :id")
+    Optional<String> findStatusById(@Param("id") Long id);
+    
+    /**
+     * 比较并交换订单状态：只有当前状态仍是 from 时才改为 to，返回更新行数（0 表示状态已被别人改掉）
+     * 单条 UPDATE 只短暂持有行锁，不阻塞普通读
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :to, o.updatedAt = :now WHERE o.id = :id AND o.status = :from")
+    int compareAndSetStatus(@Param("id") Long id, @Param("from") String from, @Param("to") String to,
+                            @Param("now") LocalDateTime now);
+    
+    /**
+     * 锁定一批超时未支付的订单，已被其他事务（其他节点的清理任务、正在支付的请求）锁住的行直接跳过
+     */
+    @Query(value = "SELECT id FROM orders WHERE status = 'PENDING' AND created_at < :cutoff " +
+                   "ORDER BY created_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockExpiredPendingIds(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+    
+    /**
+     * 批量修改订单状态
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :status, o.updatedAt = :now WHERE o.id IN :ids")
+    int updateStatusByIds(@Param("ids") List<Long> ids, @Param("status") String status,
+                          @Param("now") LocalDateTime now);
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.shop.repository;
+
+import com.shop.dto.OrderFilter;
+import com.shop.dto.OrderSummaryDTO;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 订单的动态条件查询（Criteria API 实现，见 OrderRepositoryCustomImpl）
+ */
+public interface OrderRepositoryCustom {
+    
+    /**
+     * 按筛选条件的游标分页：newer 为 false 时取 (下单时间, ID) 小于游标的订单、从新到旧，
+     * 为 true 时取大于游标的订单、从旧到新；最多返回 limit 条
+     */
+    List<OrderSummaryDTO> findFilteredPage(OrderFilter filter, LocalDateTime createdAt, Long id,
+                                           boolean newer, int limit);
+    
+    /**
+     * 符合条件的订单数，最多数到 cap（超过 cap 时返回 cap + 1）
+     */
+    long countFiltered(OrderFilter filter, int cap);
+}
\ No newline at end of file
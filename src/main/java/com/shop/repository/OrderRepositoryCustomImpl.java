@@ -0,0 +1,86 @@
+package com.shop.repository;
+
+import com.shop.dto.OrderFilter;
+import com.shop.dto.OrderSummaryDTO;
+import com.shop.entity.Order;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单动态条件查询
+ * 只把非空的筛选条件拼进 WHERE，避免 ":x IS NULL OR ..." 写法让 MySQL 放弃合适的索引
+ */
+public class OrderRepositoryCustomImpl implements OrderRepositoryCustom {
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Override
+    public List<OrderSummaryDTO> findFilteredPage(OrderFilter filter, LocalDateTime createdAt, Long id,
+                                                  boolean newer, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<OrderSummaryDTO> query = cb.createQuery(OrderSummaryDTO.class);
+        Root<Order> o = query.from(Order.class);
+        query.select(cb.construct(OrderSummaryDTO.class, o.get("id"), o.get("userId"), o.get("totalPrice"),
+                                  o.get("status"), o.get("createdAt")));
+        
+        List<Predicate> predicates = filters(cb, o, filter);
+        Path<LocalDateTime> created = o.get("createdAt");
+        Path<Long> orderId = o.get("id");
+        if (newer) {
+            predicates.add(cb.or(cb.greaterThan(created, createdAt),
+                                 cb.and(cb.equal(created, createdAt), cb.greaterThan(orderId, id))));
+            query.orderBy(cb.asc(created), cb.asc(orderId));
+        } else {
+            predicates.add(cb.or(cb.lessThan(created, createdAt),
+                                 cb.and(cb.equal(created, createdAt), cb.lessThan(orderId, id))));
+            query.orderBy(cb.desc(created), cb.desc(orderId));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+    
+    @Override
+    public long countFiltered(OrderFilter filter, int cap) {
+        // 只取 ID 并限制行数，相当于 COUNT(*) ... LIMIT cap + 1，大表上也是有界的查询
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Order> o = query.from(Order.class);
+        query.select(o.get("id"));
+        query.where(filters(cb, o, filter).toArray(new Predicate[0]));
+        return entityManager.createQuery(query).setMaxResults(cap + 1).getResultList().size();
+    }
+    
+    private List<Predicate> filters(CriteriaBuilder cb, Root<Order> o, OrderFilter filter) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.getStatus() != null) {
+            predicates.add(cb.equal(o.get("status"), filter.getStatus()));
+        }
+        if (filter.getUserId() != null) {
+            predicates.add(cb.equal(o.get("userId"), filter.getUserId()));
+        }
+        if (filter.getCreatedFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(o.<LocalDateTime>get("createdAt"), filter.getCreatedFrom()));
+        }
+        if (filter.getCreatedTo() != null) {
+            predicates.add(cb.lessThan(o.<LocalDateTime>get("createdAt"), filter.getCreatedTo()));
+        }
+        if (filter.getMinAmount() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(o.<BigDecimal>get("totalPrice"), filter.getMinAmount()));
+        }
+        if (filter.getMaxAmount() != null) {
+            predicates.add(cb.lessThanOrEqualTo(o.<BigDecimal>get("totalPrice"), filter.getMaxAmount()));
+        }
+        return predicates;
+    }
+}
\ No newline at end of file
@@ -1,9 +1,16 @@
 package com.shop.repository;
 
+import com.shop.dto.ProductSummaryDTO;
 import com.shop.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * 商品数据访问接口
@@ -26,4 +33,99 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * 查找库存大于 0 的商品
      */
     List<Product> findByStockGreaterThan(Integer stock);
+    
+    /**
+     * 只查询商品的最后修改时间（条件请求校验用，不加载实体）
+     */
+    @Query("SELECT p.updatedAt FROM Product p WHERE p.id = :id")
+    Optional<LocalDateTime> findUpdatedAtById(@Param("id") Long id);
+    
+    /**
+     * 列表投影：不读取完整的 TEXT 描述，只截取前缀
+     */
+    String SUMMARY_COLUMNS = "new com.shop.dto.ProductSummaryDTO(p.id, p.name, p.price, p.stock, p.imageUrl, p.category, " +
+                             "SUBSTRING(p.description, 1, " + ProductSummaryDTO.DESCRIPTION_PREFIX_LENGTH + "))";
+    
+    /**
+     * 管理后台商品列表（不含描述）
+     */
+    @Query("SELECT new com.shop.dto.ProductSummaryDTO(p.id, p.name, p.price, p.stock, p.imageUrl, p.category) " +
+           "FROM Product p ORDER BY p.id")
+    List<ProductSummaryDTO> findAllSummaries();
+    
+    // ==================== 游标（keyset）分页 ====================
+    // category / keyword 为 null、inStock 为 false 时不过滤；每页条数由 Pageable 控制（只用 page 0，不做 COUNT）
+    
+    /**
+     * ID 大于游标的商品，按 ID 升序
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Product p " +
+           "WHERE (:category IS NULL OR p.category = :category) " +
+           "AND (:keyword IS NULL OR p.name LIKE CONCAT('%', :keyword, '%')) " +
+           "AND (:inStock = FALSE OR p.stock > 0) " +
+           "AND p.id > :id " +
+           "ORDER BY p.id ASC")
+    List<ProductSummaryDTO> findPageByIdAfter(@Param("category") String category,
+                                              @Param("keyword") String keyword,
+                                              @Param("inStock") boolean inStock,
+                                              @Param("id") Long id,
+                                              Pageable pageable);
+    
+    /**
+     * ID 小于游标的商品，按 ID 降序
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Product p " +
+           "WHERE (:category IS NULL OR p.category = :category) " +
+           "AND (:keyword IS NULL OR p.name LIKE CONCAT('%', :keyword, '%')) " +
+           "AND (:inStock = FALSE OR p.stock > 0) " +
+           "AND p.id < :id " +
+           "ORDER BY p.id DESC")
+    List<ProductSummaryDTO> findPageByIdBefore(@Param("category") String category,
+                                               @Param("keyword") String keyword,
+                                               @Param("inStock") boolean inStock,
+                                               @Param("id") Long id,
+                                               Pageable pageable);
+    
+    /**
+     * (价格, ID) 大于游标的商品，按价格、ID 升序
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Product p " +
+           "WHERE (:category IS NULL OR p.category = :category) " +
+           "AND (:keyword IS NULL OR p.name LIKE CONCAT('%', :keyword, '%')) " +
+           "AND (:inStock = FALSE OR p.stock > 0) " +
+           "AND (p.price > :price OR (p.price = :price AND p.id > :id)) " +
+           "ORDER BY p.price ASC, p.id ASC")
+    List<ProductSummaryDTO> findPageByPriceAfter(@Param("category") String category,
+                                                 @Param("keyword") String keyword,
+                                                 @Param("inStock") boolean inStock,
+                                                 @Param("price") BigDecimal price,
+                                                 @Param("id") Long id,
+                                                 Pageable pageable);
+    
+    /**
+     * (价格, ID) 小于游标的商品，按价格、ID 降序
+     */
+    @Query("SELECT " + SUMMARY_COLUMNS + " FROM Product p " +
+           "WHERE (:category IS NULL OR p.category = :category) " +
+           "AND (:keyword IS NULL OR p.name LIKE CONCAT('%', :keyword, '%')) " +
+           "AND (:inStock = FALSE OR p.stock > 0) " +
+           "AND (p.price < :price OR (p.price = :price AND p.id < :id)) " +
+           "ORDER BY p.price DESC, p.id DESC")
+    List<ProductSummaryDTO> findPageByPriceBefore(@Param("category") String category,
+                                                  @Param("keyword") String keyword,
+                                                  @Param("inStock") boolean inStock,
+                                                  @Param("price") BigDecimal price,
+                                                  @Param("id") Long id,
+                                                  Pageable pageable);
+    
+    /**
+     * 统计符合条件的商品数（结果由 ProductService 缓存）
+     */
+    @Query("SELECT COUNT(p) FROM Product p " +
+           "WHERE (:category IS NULL OR p.category = :category) " +
+           "AND (:keyword IS NULL OR p.name LIKE CONCAT('%', :keyword, '%')) " +
+           "AND (:inStock = FALSE OR p.stock > 0)")
+    long countMatching(@Param("category") String category,
+                       @Param("keyword") String keyword,
+                       @Param("inStock") boolean inStock);
 }
\ No newline at end of file
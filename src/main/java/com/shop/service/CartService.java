@@ -123,6 +123,16 @@ public class CartService {
         session.removeAttribute(CART_SESSION_KEY);
     }
     
+    /**
+     * 下单失败时把商品放回购物车（购物车已有商品时不覆盖）
+     */
+    public void restoreCart(List<CartItem> items) {
+        List<CartItem> cart = getCart();
+        if (cart.isEmpty()) {
+            cart.addAll(items);
+        }
+    }
+    
     /**
      * 计算购物车总价
      */
@@ -0,0 +1,273 @@
+package com.shop.service;
+
+import com.shop.entity.Product;
+import com.shop.event.CatalogUpdatedEvent;
+import com.shop.event.ProductChangedEvent;
+import com.shop.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 商品目录内存缓存
+ * 持有一个只读的 CatalogSnapshot，读请求直接访问内存，不再查询数据库；
+ * 商品变更事务提交后，重新加载该商品并替换为新快照
+ */
+@Service
+public class CatalogService {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private DescriptionStore descriptionStore;
+
+    /**
+     * 是否启用内存目录（关闭后所有读请求直接查数据库）
+     */
+    @Value("${shop.catalog.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 快照最大允许陈旧时间（毫秒），超过后读请求回退到数据库并触发重新加载
+     */
+    @Value("${shop.catalog.max-staleness-ms:600000}")
+    private long maxStalenessMs;
+
+    /**
+     * 重新加载失败后，读请求至少间隔这么久（毫秒）才再次触发重新加载
+     */
+    @Value("${shop.catalog.reload-retry-ms:30000}")
+    private long reloadRetryMs;
+
+    private volatile CatalogSnapshot snapshot;
+
+    // 后台重新加载是否正在进行（同一时间只有一个），以及上次失败的时间
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private volatile long lastReloadFailure;
+
+    private TransactionTemplate readTemplate;
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        // 事务提交回调中访问数据库必须使用新事务
+        readTemplate = new TransactionTemplate(transactionManager);
+        readTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readTemplate.setReadOnly(true);
+
+        hits = Counter.builder("shop.catalog.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("shop.catalog.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("shop.catalog.size", this, c -> c.snapshot == null ? 0 : c.snapshot.size())
+            .register(meterRegistry);
+        Gauge.builder("shop.catalog.age.seconds", this,
+                c -> c.snapshot == null ? 0 : (System.currentTimeMillis() - c.snapshot.getBuiltAt()) / 1000.0)
+            .register(meterRegistry);
+    }
+
+    /**
+     * 应用启动完成后加载目录
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    /**
+     * 定时全量刷新，兜底其他节点或直接改库造成的变更
+     */
+    @Scheduled(initialDelayString = "${shop.catalog.refresh-interval-ms:300000}",
+               fixedDelayString = "${shop.catalog.refresh-interval-ms:300000}")
+    public void scheduledReload() {
+        reload();
+    }
+
+    /**
+     * 全量重新加载目录（批量导入等大范围变更后也调用此方法）
+     */
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<Product> products = readTemplate.execute(status -> productRepository.findAll());
+            long version = snapshot == null ? 1 : snapshot.getVersion() + 1;
+            // 描述写入新段，旧段中被覆盖的描述随之回收
+            descriptionStore.startGeneration();
+            snapshot = CatalogSnapshot.of(products, version, descriptionStore);
+            eventPublisher.publishEvent(CatalogUpdatedEvent.reloaded(snapshot));
+            lastReloadFailure = 0;
+            System.out.println("商品目录已加载：" + snapshot.size() + " 件商品，版本 " + version);
+        } catch (Exception e) {
+            lastReloadFailure = System.currentTimeMillis();
+            System.err.println("商品目录加载失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 在后台线程中重新加载，不阻塞调用方；已有重新加载在进行或刚失败过时直接返回
+     */
+    private void reloadInBackground() {
+        if (System.currentTimeMillis() - lastReloadFailure < reloadRetryMs) {
+            return;
+        }
+        if (!reloading.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                reload();
+            } finally {
+                reloading.set(false);
+            }
+        }, "catalog-reload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 商品变更提交后更新快照（没有事务时立即执行）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (snapshot == null) {
+            return;
+        }
+        refreshProduct(event.getProductId());
+    }
+
+    private synchronized void refreshProduct(Long productId) {
+        install(productId, readTemplate.execute(status -> productRepository.findById(productId).orElse(null)));
+    }
+
+    /**
+     * 把从数据库读到的商品（null 表示已删除）放入快照，调用方需持有本对象的锁
+     */
+    private void install(Long productId, Product product) {
+        if (snapshot != null) {
+            Product previous = snapshot.findById(productId);
+            if (previous == null && product == null) {
+                return;
+            }
+            snapshot = product != null ? snapshot.with(product, descriptionStore) : snapshot.without(productId);
+            if (product == null && previous.getDescriptionRef() != null) {
+                descriptionStore.put(null, previous.getDescriptionRef());
+            }
+            eventPublisher.publishEvent(CatalogUpdatedEvent.changed(snapshot, previous, snapshot.findById(productId)));
+            // 编辑积累的旧描述过多时重新加载，写入新段
+            if (descriptionStore.needsCompaction()) {
+                reload();
+            }
+        }
+    }
+
+    /**
+     * 当前可用快照；未启用、未加载或已过期时返回 null
+     * 过期时在后台触发一次重新加载，本次请求直接回退到数据库，不等待加载完成
+     */
+    private CatalogSnapshot current() {
+        CatalogSnapshot current = snapshot;
+        if (!enabled || current == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - current.getBuiltAt() > maxStalenessMs) {
+            reloadInBackground();
+            return null;
+        }
+        return current;
+    }
+
+    public List<Product> findAll() {
+        CatalogSnapshot current = current();
+        if (current == null) {
+            misses.increment();
+            return productRepository.findAll();
+        }
+        hits.increment();
+        return current.findAll();
+    }
+
+    public List<Product> findByCategory(String category) {
+        CatalogSnapshot current = current();
+        if (current == null) {
+            misses.increment();
+            return productRepository.findByCategory(category);
+        }
+        hits.increment();
+        return current.findByCategory(category);
+    }
+
+    public Product findById(Long id) {
+        CatalogSnapshot current = current();
+        if (current == null) {
+            misses.increment();
+            return productRepository.findById(id).orElse(null);
+        }
+        Product product = current.findById(id);
+        if (product != null) {
+            hits.increment();
+            return product;
+        }
+        // 快照中没有，可能是其他节点刚新增的商品，在锁外回源一次（不存在的 ID 不会占用锁）
+        misses.increment();
+        Product loaded = productRepository.findById(id).orElse(null);
+        if (loaded == null) {
+            return null;
+        }
+        // 读取期间快照没有变化时才放入，避免用旧数据覆盖并发的变更
+        synchronized (this) {
+            if (snapshot == current) {
+                install(id, loaded);
+                return snapshot.findById(id);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 当前快照（未启用或未加载时为 null），供派生索引初始化使用
+     */
+    public CatalogSnapshot getSnapshot() {
+        return enabled ? snapshot : null;
+    }
+
+    /**
+     * 当前快照版本号（未加载时为 0）
+     */
+    public long getVersion() {
+        CatalogSnapshot current = snapshot;
+        return current == null ? 0 : current.getVersion();
+    }
+
+    public long getHitCount() {
+        return (long) hits.count();
+    }
+
+    public long getMissCount() {
+        return (long) misses.count();
+    }
+}
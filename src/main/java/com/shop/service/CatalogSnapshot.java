@@ -0,0 +1,210 @@
+package com.shop.service;
+
+import com.shop.entity.Product;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 商品目录快照（只读）
+ * 按 ID 和分类建立索引；任何修改都复制出一个新快照整体替换（copy-on-write），已发布的快照不会再变化；
+ * 只改了库存、价格等字段时复制索引并按位置替换这个商品（不重新排序，未受影响的分类列表直接共用）
+ * 快照中的商品都是脱离持久化上下文的副本，调用方不要修改；
+ * 启用 DescriptionStore 时副本不保存描述文本，只保存句柄（descriptionRef）
+ */
+public final class CatalogSnapshot {
+
+    private static final Comparator<Product> BY_ID = Comparator.comparing(Product::getId);
+
+    // 索引构建完成后不再修改（final 字段保证发布后其他线程看到完整的内容），对外只暴露只读视图
+    private final HashMap<Long, Product> byId;
+    private final Map<String, ArrayList<Product>> byCategory;
+    private final ArrayList<Product> sorted;
+    private final Map<Long, Product> byIdView;
+    private final Map<String, List<Product>> byCategoryView;
+    private final List<Product> all;
+    private final long version;
+    private final long builtAt;
+    private final long fingerprint;
+
+    /**
+     * 使用已经建好的索引，调用方之后不能再修改它们
+     */
+    private CatalogSnapshot(HashMap<Long, Product> byId, Map<String, ArrayList<Product>> byCategory,
+                            ArrayList<Product> sorted, long version, long builtAt, long fingerprint) {
+        Map<String, List<Product>> categoryViews = new LinkedHashMap<>();
+        byCategory.forEach((k, v) -> categoryViews.put(k, Collections.unmodifiableList(v)));
+
+        this.byId = byId;
+        this.byCategory = byCategory;
+        this.sorted = sorted;
+        this.byIdView = Collections.unmodifiableMap(byId);
+        this.byCategoryView = Collections.unmodifiableMap(categoryViews);
+        this.all = Collections.unmodifiableList(sorted);
+        this.version = version;
+        this.builtAt = builtAt;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 按 ID 排序并重建分类索引和指纹
+     */
+    private static CatalogSnapshot build(HashMap<Long, Product> byId, long version, long builtAt) {
+        ArrayList<Product> sorted = new ArrayList<>(byId.values());
+        sorted.sort(BY_ID);
+
+        Map<String, ArrayList<Product>> categories = new LinkedHashMap<>();
+        long fingerprint = 0;
+        for (Product product : sorted) {
+            if (product.getCategory() != null) {
+                categories.computeIfAbsent(product.getCategory(), k -> new ArrayList<>()).add(product);
+            }
+            fingerprint += hashOf(product);
+        }
+        return new CatalogSnapshot(byId, categories, sorted, version, builtAt, fingerprint);
+    }
+
+    /**
+     * 从数据库加载的全部商品构建快照
+     */
+    public static CatalogSnapshot of(List<Product> products, long version, DescriptionStore descriptions) {
+        HashMap<Long, Product> map = new HashMap<>();
+        for (Product product : products) {
+            map.put(product.getId(), copyOf(product, null, descriptions));
+        }
+        return build(map, version, System.currentTimeMillis());
+    }
+
+    /**
+     * 返回新增或替换了一个商品的新快照
+     * 商品已存在且分类没变时复制索引后按位置替换（O(N) 复制，不重新排序，其他分类的列表共用），
+     * 否则复制并重建索引；当前快照不受影响，构建时间沿用上一次全量加载的时间
+     */
+    public CatalogSnapshot with(Product product, DescriptionStore descriptions) {
+        Product previous = byId.get(product.getId());
+        Product copy = copyOf(product, previous, descriptions);
+        if (previous != null && Objects.equals(previous.getCategory(), copy.getCategory())) {
+            HashMap<Long, Product> map = new HashMap<>(byId);
+            map.put(copy.getId(), copy);
+            ArrayList<Product> list = new ArrayList<>(sorted);
+            replace(list, copy);
+            Map<String, ArrayList<Product>> categories = byCategory;
+            if (copy.getCategory() != null) {
+                categories = new LinkedHashMap<>(byCategory);
+                ArrayList<Product> inCategory = new ArrayList<>(byCategory.get(copy.getCategory()));
+                replace(inCategory, copy);
+                categories.put(copy.getCategory(), inCategory);
+            }
+            return new CatalogSnapshot(map, categories, list, version + 1, builtAt,
+                                       fingerprint - hashOf(previous) + hashOf(copy));
+        }
+        HashMap<Long, Product> map = new HashMap<>(byId);
+        map.put(copy.getId(), copy);
+        return build(map, version + 1, builtAt);
+    }
+
+    /**
+     * 返回移除了一个商品的新快照
+     */
+    public CatalogSnapshot without(Long productId) {
+        if (!byId.containsKey(productId)) {
+            return this;
+        }
+        HashMap<Long, Product> map = new HashMap<>(byId);
+        map.remove(productId);
+        return build(map, version + 1, builtAt);
+    }
+
+    public Product findById(Long id) {
+        return byIdView.get(id);
+    }
+
+    public List<Product> findByCategory(String category) {
+        return byCategoryView.getOrDefault(category, Collections.emptyList());
+    }
+
+    public List<Product> findAll() {
+        return all;
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    /**
+     * 快照版本号，每次替换递增
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 目录内容指纹：各商品列表页字段哈希之和（替换一个商品时增量更新）
+     * 只取决于商品数据本身，数据相同时各节点、重启前后的指纹都相同，可用作列表页的 ETag
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 上一次全量加载的时间（毫秒），单个商品的变更不会刷新它
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * 单个商品的 64 位哈希（列表页显示的字段和更新时间），只使用内容确定的 hashCode
+     */
+    private static long hashOf(Product product) {
+        long h = Objects.hash(product.getId(), product.getName(),
+                              product.getPrice() == null ? null : product.getPrice().stripTrailingZeros(),
+                              product.getStock(), product.getImageUrl(), product.getCategory(),
+                              product.getFlashSale(), product.getUpdatedAt());
+        h = h * 0x9E3779B97F4A7C15L + product.getId();
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 在按 ID 排序的列表中找到同 ID 的商品并替换
+     */
+    private static void replace(ArrayList<Product> list, Product product) {
+        int index = Collections.binarySearch(list, product, BY_ID);
+        if (index >= 0) {
+            list.set(index, product);
+        }
+    }
+
+    /**
+     * 复制商品，避免快照与 Hibernate 管理的实体共享对象
+     * previous 为快照中的旧副本，描述没变时复用它的句柄
+     */
+    private static Product copyOf(Product source, Product previous, DescriptionStore descriptions) {
+        Product copy = new Product();
+        copy.setId(source.getId());
+        copy.setName(source.getName());
+        if (descriptions != null && descriptions.isEnabled()) {
+            long previousRef = previous == null || previous.getDescriptionRef() == null ? 0 : previous.getDescriptionRef();
+            long ref = descriptions.put(source.getDescription(), previousRef);
+            copy.setDescriptionRef(ref == 0 ? null : ref);
+        } else {
+            copy.setDescription(source.getDescription());
+        }
+        copy.setPrice(source.getPrice());
+        copy.setStock(source.getStock());
+        copy.setImageUrl(source.getImageUrl());
+        copy.setCategory(source.getCategory());
+        copy.setFlashSale(source.getFlashSale());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        return copy;
+    }
+}
@@ -0,0 +1,251 @@
+package com.shop.service;
+
+import com.shop.entity.Product;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 商品描述的堆外存储
+ * 描述以 UTF-8 字节追加写入本地段文件并通过内存映射读取，目录快照中的商品只保存一个 long 句柄
+ * （段号 16 位 | 偏移 32 位 | 长度 16 位），详情页需要时才从映射中解码。
+ * 每次全量加载目录时写入新段（同时起到压缩的作用），上一段保留到下一次换段，供仍在使用旧快照的请求读取；
+ * 段文件不需要持久化，启动时清空，由第一次加载从 MySQL 重建
+ */
+@Component
+public class DescriptionStore {
+
+    // TEXT 列最多 65535 字节，正好放进 16 位长度
+    private static final int MAX_LENGTH = 0xFFFF;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+
+    @Value("${shop.descriptions.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 段文件所在目录
+     */
+    @Value("${shop.descriptions.dir:data/descriptions}")
+    private String dir;
+
+    /**
+     * 垃圾（被覆盖的旧描述）超过这个字节数且超过段大小一半时需要压缩
+     */
+    @Value("${shop.descriptions.compact-threshold-bytes:8388608}")
+    private long compactThresholdBytes;
+
+    private Path root;
+    private volatile Segment current;
+    private volatile Segment previous;
+    private int nextGeneration = 1;
+
+    /**
+     * 一个段文件，只追加；映射区域不够时扩大文件并重新映射
+     */
+    private static final class Segment {
+        final int generation;
+        final Path path;
+        final FileChannel channel;
+        volatile MappedByteBuffer map;
+        int size;
+        long garbage;
+
+        Segment(int generation, Path path) throws IOException {
+            this.generation = generation;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY);
+        }
+
+        void close() {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("删除描述段文件失败：" + path + "，" + e.getMessage());
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            root = Paths.get(dir).toAbsolutePath().normalize();
+            Files.createDirectories(root);
+            // 上次运行留下的段文件没有用处，数据以 MySQL 为准
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, "*.seg")) {
+                for (Path path : stream) {
+                    Files.delete(path);
+                }
+            }
+            int generation = nextGeneration();
+            current = new Segment(generation, root.resolve("descriptions-" + generation + ".seg"));
+        } catch (IOException e) {
+            System.err.println("描述存储初始化失败，描述将保留在堆内：" + e.getMessage());
+            enabled = false;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (current != null) {
+            current.close();
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 换到一个新段（全量加载目录前调用），之后写入的描述都在新段中
+     * 上一段保留给还在使用旧快照的请求，再上一段关闭删除
+     */
+    public synchronized void startGeneration() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int generation = nextGeneration();
+            Segment segment = new Segment(generation, root.resolve("descriptions-" + generation + ".seg"));
+            if (previous != null) {
+                previous.close();
+            }
+            previous = current;
+            current = segment;
+        } catch (IOException e) {
+            System.err.println("创建描述段文件失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入描述并返回句柄；previousRef 对应的内容与 text 相同时直接复用，不重复写入
+     * 描述为 null 时返回 0
+     */
+    public synchronized long put(String text, long previousRef) {
+        if (text == null) {
+            release(previousRef);
+            return 0;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_LENGTH) {
+            bytes = Arrays.copyOf(bytes, MAX_LENGTH);
+        }
+        if (previousRef != 0 && generationOf(previousRef) == current.generation
+                && Arrays.equals(bytes, readBytes(previousRef, MAX_LENGTH))) {
+            return previousRef;
+        }
+        release(previousRef);
+
+        Segment segment = current;
+        try {
+            if (segment.size + bytes.length > segment.map.capacity()) {
+                long capacity = Math.max((long) segment.map.capacity() * 2, (long) segment.size + bytes.length);
+                if (capacity > Integer.MAX_VALUE) {
+                    throw new IOException("段文件超过 2GB");
+                }
+                segment.map = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("写入商品描述失败：" + e.getMessage(), e);
+        }
+        segment.map.put(segment.size, bytes);
+        long ref = ((long) segment.generation << 48) | ((long) segment.size << 16) | bytes.length;
+        segment.size += bytes.length;
+        return ref;
+    }
+
+    /**
+     * 读取完整描述，句柄为 0 或所在段已删除时返回 null
+     */
+    public String get(long ref) {
+        byte[] bytes = readBytes(ref, MAX_LENGTH);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 只读取描述的前 maxChars 个字符（最多解码 maxChars * 4 字节）
+     */
+    public String prefix(long ref, int maxChars) {
+        byte[] bytes = readBytes(ref, maxChars * 4);
+        if (bytes == null) {
+            return null;
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return text.length() > maxChars ? text.substring(0, maxChars) : text;
+    }
+
+    /**
+     * 商品的描述：堆内有就直接返回，否则从段文件读取
+     */
+    public String descriptionOf(Product product) {
+        if (product.getDescription() != null || product.getDescriptionRef() == null) {
+            return product.getDescription();
+        }
+        return get(product.getDescriptionRef());
+    }
+
+    /**
+     * 是否需要压缩：当前段中被覆盖的旧描述过多
+     */
+    public synchronized boolean needsCompaction() {
+        return enabled && current.garbage > compactThresholdBytes && current.garbage * 2 > current.size;
+    }
+
+    private void release(long ref) {
+        if (ref != 0 && generationOf(ref) == current.generation) {
+            current.garbage += lengthOf(ref);
+        }
+    }
+
+    private byte[] readBytes(long ref, int maxBytes) {
+        if (ref == 0) {
+            return null;
+        }
+        Segment segment = current;
+        if (segment == null || segment.generation != generationOf(ref)) {
+            segment = previous;
+            if (segment == null || segment.generation != generationOf(ref)) {
+                return null;
+            }
+        }
+        byte[] bytes = new byte[Math.min(lengthOf(ref), maxBytes)];
+        segment.map.get((int) ((ref >>> 16) & 0xFFFFFFFFL), bytes);
+        return bytes;
+    }
+
+    /**
+     * 段号在 1..65535 之间循环（0 保留给空句柄）
+     */
+    private int nextGeneration() {
+        int generation = nextGeneration;
+        nextGeneration = nextGeneration % 0xFFFF + 1;
+        return generation;
+    }
+
+    private static int generationOf(long ref) {
+        return (int) (ref >>> 48);
+    }
+
+    private static int lengthOf(long ref) {
+        return (int) (ref & 0xFFFF);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,345 @@
+package com.shop.service;
+
+import com.shop.dto.CartItem;
+import com.shop.entity.Order;
+import com.shop.entity.Product;
+import com.shop.event.CatalogUpdatedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 限时抢购下单
+ * 抢购商品的库存预先加载到内存中的分段原子计数器（令牌），抢不到令牌的请求直接拒绝，不访问数据库；
+ * 抢到令牌的请求进入有界队列，由少量写线程批量取出，在一个事务中合并扣减库存并写入订单。
+ * 数据库中的条件扣减（stock >= ?）仍然是最终校验，令牌只负责挡住大部分失败请求
+ */
+@Service
+public class FlashSaleService {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 排队下单请求的最大数量，超过后直接拒绝
+     */
+    @Value("${shop.flash-sale.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * 写入线程数
+     */
+    @Value("${shop.flash-sale.writers:2}")
+    private int writers;
+
+    /**
+     * 每个事务最多合并的订单数
+     */
+    @Value("${shop.flash-sale.batch-size:100}")
+    private int batchSize;
+
+    // 商品 ID -> 令牌
+    private final Map<Long, FlashSaleTokens> tokens = new ConcurrentHashMap<>();
+
+    private BlockingQueue<FlashOrder> queue;
+    private final List<Thread> writerThreads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private TransactionTemplate transactionTemplate;
+    private Counter admitted;
+    private Counter rejected;
+    private Counter written;
+    private Counter failed;
+    private Timer batchTimer;
+
+    /**
+     * 一个排队中的下单请求
+     */
+    private static final class FlashOrder {
+        final Long userId;
+        final List<CartItem> items;
+        final Map<Long, Integer> flashQuantities;
+        final String requestId;
+        final CompletableFuture<Order> result = new CompletableFuture<>();
+
+        FlashOrder(Long userId, List<CartItem> items, Map<Long, Integer> flashQuantities, String requestId) {
+            this.userId = userId;
+            this.items = items;
+            this.flashQuantities = flashQuantities;
+            this.requestId = requestId;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        admitted = Counter.builder("shop.flashsale.requests").tag("result", "admitted").register(meterRegistry);
+        rejected = Counter.builder("shop.flashsale.requests").tag("result", "rejected").register(meterRegistry);
+        written = Counter.builder("shop.flashsale.orders").tag("result", "written").register(meterRegistry);
+        failed = Counter.builder("shop.flashsale.orders").tag("result", "failed").register(meterRegistry);
+        batchTimer = Timer.builder("shop.flashsale.batch").register(meterRegistry);
+        Gauge.builder("shop.flashsale.queue.size", this, s -> s.queue.size()).register(meterRegistry);
+
+        for (int i = 0; i < writers; i++) {
+            Thread thread = new Thread(this::drain, "flash-sale-writer-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            writerThreads.add(thread);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Thread thread : writerThreads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * 目录加载或商品变更时维护令牌：新标记为抢购的商品按库存发放令牌，取消标记的商品移除；
+     * 管理员修改库存后，等排队的请求都写完再按数据库库存重置
+     */
+    @EventListener
+    public void onCatalogUpdated(CatalogUpdatedEvent event) {
+        if (event.isReload()) {
+            for (Product product : event.getSnapshot().findAll()) {
+                sync(product);
+            }
+            tokens.keySet().removeIf(id -> {
+                Product product = event.getSnapshot().findById(id);
+                return product == null || !Boolean.TRUE.equals(product.getFlashSale());
+            });
+            return;
+        }
+        if (event.getCurrent() != null) {
+            sync(event.getCurrent());
+        } else if (event.getPrevious() != null) {
+            tokens.remove(event.getPrevious().getId());
+        }
+    }
+
+    private void sync(Product product) {
+        if (!Boolean.TRUE.equals(product.getFlashSale())) {
+            tokens.remove(product.getId());
+            return;
+        }
+        FlashSaleTokens productTokens = tokens.computeIfAbsent(product.getId(), id -> new FlashSaleTokens());
+        productTokens.resetIfIdle(product.getStock() == null ? 0 : product.getStock());
+    }
+
+    /**
+     * 购物车中是否有抢购商品（有则整单走抢购下单流程）
+     */
+    public boolean isFlashSale(List<CartItem> cart) {
+        for (CartItem item : cart) {
+            if (tokens.containsKey(item.getProductId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 抢购商品剩余令牌数（页面展示用，不是精确库存）
+     */
+    public int available(Long productId) {
+        FlashSaleTokens productTokens = tokens.get(productId);
+        return productTokens == null ? 0 : productTokens.available();
+    }
+
+    /**
+     * 提交抢购订单：先在内存中扣令牌，成功后排队等待写入
+     * 返回的 Future 在订单写入数据库后完成；令牌不足或队列已满时直接抛出异常
+     * requestId 为表单的幂等令牌（可以为 null），写入 orders.request_id，重复提交会因唯一约束失败
+     */
+    public CompletableFuture<Order> submit(Long userId, List<CartItem> cart, String requestId) {
+        Map<Long, Integer> flashQuantities = new HashMap<>();
+        for (CartItem item : cart) {
+            if (tokens.containsKey(item.getProductId())) {
+                flashQuantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+            }
+        }
+
+        Map<Long, Integer> acquired = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : flashQuantities.entrySet()) {
+            FlashSaleTokens productTokens = tokens.get(entry.getKey());
+            if (productTokens == null || !productTokens.acquire(entry.getValue())) {
+                returnTokens(acquired);
+                clearPending(acquired);
+                rejected.increment();
+                throw new RuntimeException("库存不足，商品已抢完");
+            }
+            acquired.put(entry.getKey(), entry.getValue());
+        }
+
+        // 购物车在请求线程中，写线程需要自己的副本
+        List<CartItem> items = new ArrayList<>();
+        for (CartItem item : cart) {
+            CartItem copy = new CartItem();
+            copy.setProductId(item.getProductId());
+            copy.setProductName(item.getProductName());
+            copy.setPrice(item.getPrice());
+            copy.setQuantity(item.getQuantity());
+            copy.setImageUrl(item.getImageUrl());
+            items.add(copy);
+        }
+        FlashOrder order = new FlashOrder(userId, items, acquired, requestId);
+        if (!queue.offer(order)) {
+            returnTokens(acquired);
+            clearPending(acquired);
+            rejected.increment();
+            throw new RuntimeException("抢购人数过多，请稍后再试");
+        }
+        admitted.increment();
+        return order.result;
+    }
+
+    /**
+     * 写线程：取出一批请求，在一个事务中合并扣减库存并写入订单；
+     * 整批失败（例如某个商品数据库库存不足）时逐个重试，只让真正失败的请求失败
+     */
+    private void drain() {
+        List<FlashOrder> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                Timer.Sample sample = Timer.start(meterRegistry);
+                try {
+                    write(batch);
+                } catch (RuntimeException e) {
+                    if (batch.size() == 1) {
+                        fail(batch.get(0), e);
+                    } else {
+                        for (FlashOrder order : batch) {
+                            try {
+                                write(List.of(order));
+                            } catch (RuntimeException single) {
+                                fail(order, single);
+                            }
+                        }
+                    }
+                }
+                sample.stop(batchTimer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("抢购订单写入异常：" + e.getMessage());
+                for (FlashOrder order : batch) {
+                    fail(order, e);
+                }
+            } finally {
+                finish(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<FlashOrder> batch) {
+        List<Order> orders = transactionTemplate.execute(status -> {
+            Map<Long, Integer> quantities = new HashMap<>();
+            for (FlashOrder order : batch) {
+                for (CartItem item : order.items) {
+                    quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+                }
+            }
+            productService.reserveStock(quantities);
+
+            List<Order> saved = new ArrayList<>(batch.size());
+            for (FlashOrder order : batch) {
+                saved.add(orderService.saveOrder(order.userId, order.items, order.requestId));
+            }
+            return saved;
+        });
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(orders.get(i));
+        }
+        written.increment(batch.size());
+    }
+
+    private void fail(FlashOrder order, Exception e) {
+        if (order.result.completeExceptionally(e)) {
+            failed.increment();
+            returnTokens(order.flashQuantities);
+        }
+    }
+
+    /**
+     * 请求处理完毕：减少排队数，某个商品没有排队请求时按最新库存重置令牌
+     */
+    private void finish(List<FlashOrder> batch) {
+        for (FlashOrder order : batch) {
+            if (!order.result.isDone()) {
+                fail(order, new RuntimeException("订单处理中断，请重试"));
+            }
+            clearPending(order.flashQuantities);
+        }
+        CatalogSnapshot snapshot = catalogService.getSnapshot();
+        for (FlashOrder order : batch) {
+            for (Long productId : order.flashQuantities.keySet()) {
+                FlashSaleTokens productTokens = tokens.get(productId);
+                Product product = snapshot == null ? null : snapshot.findById(productId);
+                if (productTokens != null && product != null) {
+                    productTokens.resetIfIdle(product.getStock() == null ? 0 : product.getStock());
+                }
+            }
+        }
+    }
+
+    /**
+     * 下单失败，把令牌退回
+     */
+    private void returnTokens(Map<Long, Integer> quantities) {
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            FlashSaleTokens productTokens = tokens.get(entry.getKey());
+            if (productTokens != null) {
+                productTokens.release(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 请求已处理完（成功或失败），减少排队数
+     */
+    private void clearPending(Map<Long, Integer> quantities) {
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            FlashSaleTokens productTokens = tokens.get(entry.getKey());
+            if (productTokens != null) {
+                productTokens.pending.addAndGet(-entry.getValue());
+            }
+        }
+    }
+}
\ No newline at end of file
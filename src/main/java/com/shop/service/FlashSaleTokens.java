@@ -0,0 +1,92 @@
+package com.shop.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 一个抢购商品的库存令牌（FlashSaleService 使用）：分段计数器 + 已发出但还没写入数据库的数量
+ * pending 先于扣减令牌增加，重置时用 CAS 把它从 0 换成 RESETTING，因此重置不会和扣减交错
+ */
+final class FlashSaleTokens {
+
+    // 计数器分段数，每段之间留出一个缓存行，减少多核竞争
+    private static final int STRIPES = 8;
+    private static final int PAD = 16;
+
+    // 重置令牌期间 pending 的取值，此时 acquire 等待重置完成
+    private static final int RESETTING = Integer.MIN_VALUE;
+
+    final AtomicIntegerArray stripes = new AtomicIntegerArray(STRIPES * PAD);
+    final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * 先登记排队数，再从随机的一段开始依次扣减，各段加起来不够时全部退回
+     */
+    boolean acquire(int quantity) {
+        while (true) {
+            int current = pending.get();
+            if (current == RESETTING) {
+                Thread.onSpinWait();
+            } else if (pending.compareAndSet(current, current + quantity)) {
+                break;
+            }
+        }
+        int start = ThreadLocalRandom.current().nextInt(STRIPES);
+        int[] taken = new int[STRIPES];
+        int remaining = quantity;
+        for (int k = 0; k < STRIPES && remaining > 0; k++) {
+            int i = (start + k) % STRIPES;
+            while (true) {
+                int current = stripes.get(i * PAD);
+                if (current <= 0) {
+                    break;
+                }
+                int take = Math.min(current, remaining);
+                if (stripes.compareAndSet(i * PAD, current, current - take)) {
+                    taken[i] = take;
+                    remaining -= take;
+                    break;
+                }
+            }
+        }
+        if (remaining > 0) {
+            for (int i = 0; i < STRIPES; i++) {
+                if (taken[i] > 0) {
+                    stripes.addAndGet(i * PAD, taken[i]);
+                }
+            }
+            pending.addAndGet(-quantity);
+            return false;
+        }
+        return true;
+    }
+
+    void release(int quantity) {
+        stripes.addAndGet(ThreadLocalRandom.current().nextInt(STRIPES) * PAD, quantity);
+    }
+
+    /**
+     * 没有已发出未写入的令牌时按数据库库存重置，否则不做任何事
+     */
+    void resetIfIdle(int stock) {
+        if (!pending.compareAndSet(0, RESETTING)) {
+            return;
+        }
+        try {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes.set(i * PAD, stock / STRIPES + (i < stock % STRIPES ? 1 : 0));
+            }
+        } finally {
+            pending.set(0);
+        }
+    }
+
+    int available() {
+        int sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += stripes.get(i * PAD);
+        }
+        return sum;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.shop.service;
+
+import com.shop.entity.IdempotencyKey;
+import com.shop.entity.Order;
+import com.shop.repository.IdempotencyKeyRepository;
+import com.shop.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * 提交订单和支付的幂等处理
+ * 表单带一个一次性令牌，处理请求时先在 idempotency_keys 表中插入这个键（与业务写入在同一事务中），
+ * 重复的并发请求会在主键上等待并失败，不会扣库存；已处理过的键 -> 订单 ID 放在有界、会过期的本地缓存中，
+ * 重复点击直接返回原来的订单，不访问 orders、order_items、products
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String SUBMIT = "SUBMIT";
+    public static final String PAY = "PAY";
+
+    // 令牌同时用作异步下单的请求 ID（orders.request_id 长度 36）
+    private static final Pattern KEY = Pattern.compile("[0-9A-Za-z-]{8,36}");
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 幂等键的有效期（毫秒），过期后从缓存和数据库中清除
+     */
+    @Value("${shop.idempotency.ttl-ms:86400000}")
+    private long ttlMs;
+
+    /**
+     * 本地缓存的最大条数
+     */
+    @Value("${shop.idempotency.cache-size:10000}")
+    private int cacheSize;
+
+    // 操作:键 -> 结果，按访问顺序淘汰
+    private final Map<String, Result> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    private static final class Result {
+        final Long userId;
+        final Long orderId;
+        final long expiresAt;
+
+        Result(Long userId, Long orderId, long expiresAt) {
+            this.userId = userId;
+            this.orderId = orderId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 生成表单使用的一次性令牌
+     */
+    public String newKey() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * 客户端传来的令牌格式是否合法（不合法的令牌按没有令牌处理）
+     */
+    public boolean isValid(String key) {
+        return key != null && KEY.matcher(key).matches();
+    }
+
+    /**
+     * 查找这个令牌已经处理出的订单 ID，没有处理过（或不属于该用户）时返回 null
+     * 提交订单的令牌也会作为异步下单和抢购下单的请求 ID，所以最后再按 orders.request_id 查一次
+     */
+    public Long findOrderId(String operation, String key, Long userId) {
+        if (!isValid(key)) {
+            return null;
+        }
+        String cacheKey = operation + ":" + key;
+        synchronized (cache) {
+            Result result = cache.get(cacheKey);
+            if (result != null) {
+                if (result.expiresAt > System.currentTimeMillis()) {
+                    return result.userId.equals(userId) ? result.orderId : null;
+                }
+                cache.remove(cacheKey);
+            }
+        }
+
+        IdempotencyKey row = idempotencyKeyRepository.findById(key).orElse(null);
+        if (row != null && operation.equals(row.getOperation()) && row.getOrderId() != null
+                && row.getCreatedAt().isAfter(LocalDateTime.now().minus(ttlMs, ChronoUnit.MILLIS))) {
+            remember(cacheKey, row.getUserId(), row.getOrderId());
+            return row.getUserId().equals(userId) ? row.getOrderId() : null;
+        }
+        if (SUBMIT.equals(operation)) {
+            Order order = orderRepository.findByRequestId(key).orElse(null);
+            if (order != null) {
+                remember(cacheKey, order.getUserId(), order.getId());
+                return order.getUserId().equals(userId) ? order.getId() : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在当前事务中占用令牌：同一个键并发插入时后到的请求等待前一个事务结束，
+     * 前一个提交后抛出 DuplicateKeyException，调用方应回滚并用 findOrderId 取原来的结果
+     * orderId 还不知道时传 null，之后用 complete 补上
+     */
+    @Transactional
+    public void claim(String operation, String key, Long userId, Long orderId) {
+        jdbcTemplate.update("INSERT INTO idempotency_keys (idempotency_key, operation, user_id, order_id, created_at) " +
+                            "VALUES (?, ?, ?, ?, ?)", key, operation, userId, orderId, LocalDateTime.now());
+        if (orderId != null) {
+            rememberAfterCommit(operation, key, userId, orderId);
+        }
+    }
+
+    /**
+     * 记录令牌对应的订单 ID（与 claim 在同一事务中）
+     */
+    @Transactional
+    public void complete(String operation, String key, Long userId, Long orderId) {
+        jdbcTemplate.update("UPDATE idempotency_keys SET order_id = ? WHERE idempotency_key = ?", orderId, key);
+        rememberAfterCommit(operation, key, userId, orderId);
+    }
+
+    /**
+     * 定时清理过期的幂等键
+     */
+    @Scheduled(fixedDelayString = "${shop.idempotency.cleanup-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = idempotencyKeyRepository.deleteByCreatedAtBefore(
+            LocalDateTime.now().minus(ttlMs, ChronoUnit.MILLIS));
+        if (deleted > 0) {
+            System.out.println("清理过期幂等键 " + deleted + " 条");
+        }
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            cache.values().removeIf(result -> result.expiresAt <= now);
+        }
+    }
+
+    /**
+     * 事务提交后才写入缓存，回滚的请求不会留下结果
+     */
+    private void rememberAfterCommit(String operation, String key, Long userId, Long orderId) {
+        String cacheKey = operation + ":" + key;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            remember(cacheKey, userId, orderId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember(cacheKey, userId, orderId);
+            }
+        });
+    }
+
+    private void remember(String cacheKey, Long userId, Long orderId) {
+        synchronized (cache) {
+            cache.put(cacheKey, new Result(userId, orderId, System.currentTimeMillis() + ttlMs));
+            if (cache.size() > cacheSize) {
+                Iterator<String> eldest = cache.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+}
\ No newline at end of file
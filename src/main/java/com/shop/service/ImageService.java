@@ -0,0 +1,254 @@
+package com.shop.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 商品图片处理
+ * 上传的原图按内容哈希命名保存在本地磁盘（文件名随内容变化，可以长期缓存），
+ * 缩略图和中图由有界线程池异步生成；图片 URL 形如 /images/{规格}/{哈希}.{扩展名}
+ */
+@Service
+public class ImageService {
+
+    public static final String ORIGINAL = "original";
+    public static final String THUMBNAIL = "thumb";
+    public static final String MEDIUM = "medium";
+
+    // 规格 -> 最长边像素
+    private static final Map<String, Integer> VARIANT_SIZES = Map.of(THUMBNAIL, 240, MEDIUM, 800);
+
+    private static final Pattern FILE_NAME = Pattern.compile("[0-9a-f]{64}\\.(jpg|png|gif)");
+
+    // 各格式的文件头
+    private static final byte[] JPEG_MAGIC = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF87_MAGIC = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] GIF89_MAGIC = {'G', 'I', 'F', '8', '9', 'a'};
+
+    /**
+     * 图片存储目录
+     */
+    @Value("${shop.images.dir:uploads/images}")
+    private String dir;
+
+    /**
+     * 单张图片大小上限（字节）
+     */
+    @Value("${shop.images.max-bytes:10485760}")
+    private long maxBytes;
+
+    @Value("${shop.images.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${shop.images.queue-capacity:200}")
+    private int queueCapacity;
+
+    private Path root;
+    private ThreadPoolExecutor workers;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(dir).toAbsolutePath().normalize();
+        Files.createDirectories(root.resolve(ORIGINAL));
+        for (String variant : VARIANT_SIZES.keySet()) {
+            Files.createDirectories(root.resolve(variant));
+        }
+
+        // 队列满时丢弃任务：缺少的规格在访问时回退到原图，不影响上传请求
+        AtomicInteger threadNo = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            r -> {
+                Thread thread = new Thread(r, "image-worker-" + threadNo.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            (r, executor) -> System.err.println("图片处理队列已满，跳过生成缩略图"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * 保存上传的图片并异步生成各规格，返回原图 URL
+     */
+    public String store(MultipartFile file) throws IOException {
+        if (file.getSize() > maxBytes) {
+            throw new RuntimeException("图片不能超过 " + (maxBytes / 1024 / 1024) + "MB");
+        }
+
+        // 边写临时文件边计算哈希，不把整张图片读入内存；除非已移动到原图目录，否则最后删除临时文件
+        Path temp = Files.createTempFile(root, "upload-", ".tmp");
+        String fileName;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream input = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(input, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // 按文件头判断格式，不信任客户端声明的 Content-Type
+            String extension = detectExtension(temp);
+            if (extension == null) {
+                throw new RuntimeException("只支持 JPG、PNG、GIF 格式的图片");
+            }
+            fileName = HexFormat.of().formatHex(digest.digest()) + "." + extension;
+            Path original = root.resolve(ORIGINAL).resolve(fileName);
+            if (!Files.exists(original)) {
+                Files.move(temp, original, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        workers.execute(() -> generateVariants(fileName));
+        return "/images/" + ORIGINAL + "/" + fileName;
+    }
+
+    /**
+     * 查找图片文件；规格图还没生成时返回原图，文件名不合法或不存在时返回 null
+     */
+    public Path resolve(String variant, String fileName) {
+        if (!FILE_NAME.matcher(fileName).matches()
+                || (!ORIGINAL.equals(variant) && !VARIANT_SIZES.containsKey(variant))) {
+            return null;
+        }
+        Path path = root.resolve(variant).resolve(fileName);
+        if (Files.isRegularFile(path)) {
+            return path;
+        }
+        Path original = root.resolve(ORIGINAL).resolve(fileName);
+        return Files.isRegularFile(original) ? original : null;
+    }
+
+    /**
+     * 商品列表使用的缩略图 URL（外部图片 URL 原样返回）
+     */
+    public String thumbnailUrl(String imageUrl) {
+        return variantUrl(imageUrl, THUMBNAIL);
+    }
+
+    /**
+     * 商品详情使用的中图 URL（外部图片 URL 原样返回）
+     */
+    public String mediumUrl(String imageUrl) {
+        return variantUrl(imageUrl, MEDIUM);
+    }
+
+    private String variantUrl(String imageUrl, String variant) {
+        String prefix = "/images/" + ORIGINAL + "/";
+        if (imageUrl == null || !imageUrl.startsWith(prefix)) {
+            return imageUrl;
+        }
+        return "/images/" + variant + "/" + imageUrl.substring(prefix.length());
+    }
+
+    private void generateVariants(String fileName) {
+        // GIF 可能是动图，缩放后会丢帧，直接使用原图
+        if (fileName.endsWith(".gif")) {
+            return;
+        }
+        try {
+            BufferedImage source = ImageIO.read(root.resolve(ORIGINAL).resolve(fileName).toFile());
+            if (source == null) {
+                System.err.println("无法识别的图片：" + fileName);
+                return;
+            }
+            String format = fileName.endsWith(".jpg") ? "jpg" : "png";
+            for (Map.Entry<String, Integer> entry : VARIANT_SIZES.entrySet()) {
+                Path target = root.resolve(entry.getKey()).resolve(fileName);
+                if (Files.exists(target)) {
+                    continue;
+                }
+                // 先写临时文件再原子改名，避免读到写了一半的图片
+                Path temp = Files.createTempFile(root.resolve(entry.getKey()), "variant-", ".tmp");
+                ImageIO.write(scale(source, entry.getValue(), format), format, temp.toFile());
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            System.err.println("生成缩略图失败：" + fileName + "，" + e.getMessage());
+        }
+    }
+
+    /**
+     * 按比例缩小到最长边不超过 maxSize（小图不放大）
+     */
+    private BufferedImage scale(BufferedImage source, int maxSize, String format) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        int type = "jpg".equals(format) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * 根据文件头（魔数）判断图片格式，返回扩展名；不是支持的格式时返回 null
+     */
+    private String detectExtension(Path path) throws IOException {
+        byte[] header = new byte[8];
+        int length;
+        try (InputStream input = Files.newInputStream(path)) {
+            length = input.readNBytes(header, 0, header.length);
+        }
+        if (startsWith(header, length, JPEG_MAGIC)) {
+            return "jpg";
+        }
+        if (startsWith(header, length, PNG_MAGIC)) {
+            return "png";
+        }
+        if (startsWith(header, length, GIF87_MAGIC) || startsWith(header, length, GIF89_MAGIC)) {
+            return "gif";
+        }
+        return null;
+    }
+
+    private boolean startsWith(byte[] header, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,406 @@
+package com.shop.service;
+
+import com.shop.dto.OrderFilter;
+import com.shop.dto.OrderSummaryDTO;
+import com.shop.dto.ProductSalesDTO;
+import com.shop.entity.Order;
+import com.shop.entity.OrderItem;
+import com.shop.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 历史订单归档
+ * 已完成、已取消且下单时间早于保留期的订单，连同明细分批搬到 orders_archive / order_items_archive，
+ * 在线表只保留近期和未结束的订单。每批在一个事务中完成复制、累加统计、删除，批与批之间暂停，白天也可以运行。
+ * 归档时把订单数、金额和商品销量累加到汇总表，统计页面用"在线表 + 汇总表"得到和归档前相同的结果；
+ * 订单详情、我的订单、管理后台订单列表在需要更早的数据时自动查询归档表
+ */
+@Service
+@DependsOn("entityManagerFactory")
+public class OrderArchiveService {
+
+    private static final String ORDER_COLUMNS = "id, user_id, request_id, total_price, status, created_at, updated_at";
+    private static final String ITEM_COLUMNS = "id, order_id, product_id, product_name, price, quantity, subtotal";
+    private static final String SUMMARY_COLUMNS = "id, user_id, total_price, status, created_at";
+
+    private static final RowMapper<OrderSummaryDTO> SUMMARY_MAPPER = (rs, i) -> new OrderSummaryDTO(
+        rs.getLong("id"), rs.getLong("user_id"), rs.getBigDecimal("total_price"), rs.getString("status"),
+        rs.getTimestamp("created_at").toLocalDateTime());
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${shop.archive.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 在线表保留的天数：下单时间早于这个期限的已完成、已取消订单会被归档
+     * 至少保留 31 天，本月统计只查询在线表
+     */
+    @Value("${shop.archive.retention-days:180}")
+    private int retentionDays;
+
+    /**
+     * 每批归档的订单数
+     */
+    @Value("${shop.archive.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * 两批之间暂停的时间（毫秒），限制对在线业务的影响
+     */
+    @Value("${shop.archive.pause-ms:200}")
+    private long pauseMs;
+
+    /**
+     * 每次运行最多处理的批数，剩下的留到下一次
+     */
+    @Value("${shop.archive.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    /**
+     * 归档汇总数据的缓存时间（毫秒）
+     */
+    @Value("${shop.archive.totals-cache-ttl-ms:60000}")
+    private long totalsCacheTtlMs;
+
+    private TransactionTemplate transactionTemplate;
+    private Counter archived;
+
+    // 汇总缓存：状态 -> {订单数, 金额}、商品销量，以及加载时间
+    private volatile Map<String, Object[]> statusTotals = Collections.emptyMap();
+    private volatile Map<Long, ProductSalesDTO> productSales = Collections.emptyMap();
+    private volatile long totalsLoadedAt = 0;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        archived = Counter.builder("shop.orders.archived").register(meterRegistry);
+        retentionDays = Math.max(retentionDays, 31);
+
+        // 归档表与在线表结构相同（包括索引，不包括外键）；汇总表按状态、按商品累加
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS orders_archive LIKE orders");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS order_items_archive LIKE order_items");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS order_archive_totals (" +
+                                 "status VARCHAR(20) NOT NULL PRIMARY KEY, " +
+                                 "order_count BIGINT NOT NULL, " +
+                                 "total_amount DECIMAL(19, 2) NOT NULL)");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS order_archive_product_sales (" +
+                                 "product_id BIGINT NOT NULL PRIMARY KEY, " +
+                                 "product_name VARCHAR(100) NOT NULL, " +
+                                 "sold_quantity BIGINT NOT NULL, " +
+                                 "sales_amount DECIMAL(19, 2) NOT NULL)");
+        } catch (Exception e) {
+            System.err.println("创建订单归档表失败，归档已停用：" + e.getMessage());
+            enabled = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 归档界限：归档表中的订单下单时间都早于这个时间
+     */
+    public LocalDateTime horizon() {
+        return LocalDateTime.now().minusDays(retentionDays);
+    }
+
+    /**
+     * 定时归档：分批搬运，直到没有符合条件的订单或达到本次的批数上限
+     */
+    @Scheduled(initialDelayString = "${shop.archive.interval-ms:3600000}",
+               fixedDelayString = "${shop.archive.interval-ms:3600000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        int total = 0;
+        try {
+            LocalDateTime cutoff = horizon();
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                Integer count = transactionTemplate.execute(status -> archiveBatch(cutoff));
+                total += count;
+                if (count < batchSize) {
+                    break;
+                }
+                Thread.sleep(pauseMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("订单归档失败：" + e.getMessage());
+        }
+        if (total > 0) {
+            archived.increment(total);
+            totalsLoadedAt = 0;
+            System.out.println("已归档历史订单 " + total + " 个");
+        }
+    }
+
+    /**
+     * 归档一批：锁定一批订单（SKIP LOCKED，多个节点可以同时运行），累加汇总、复制到归档表、从在线表删除
+     */
+    private int archiveBatch(LocalDateTime cutoff) {
+        List<Long> ids = jdbcTemplate.queryForList(
+            "SELECT id FROM orders WHERE status IN ('COMPLETED', 'CANCELLED') AND created_at < ? " +
+            "LIMIT ? FOR UPDATE SKIP LOCKED", Long.class, Timestamp.valueOf(cutoff), batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String in = placeholders(ids.size());
+        Object[] args = ids.toArray();
+
+        jdbcTemplate.update("INSERT INTO order_archive_totals (status, order_count, total_amount) " +
+                            "SELECT status, COUNT(*), SUM(total_price) FROM orders WHERE id IN (" + in + ") " +
+                            "GROUP BY status " +
+                            "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), " +
+                            "total_amount = total_amount + VALUES(total_amount)", args);
+        jdbcTemplate.update("INSERT INTO order_archive_product_sales (product_id, product_name, sold_quantity, sales_amount) " +
+                            "SELECT oi.product_id, MAX(oi.product_name), SUM(oi.quantity), SUM(oi.subtotal) " +
+                            "FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+                            "WHERE o.id IN (" + in + ") AND o.status = 'COMPLETED' " +
+                            "GROUP BY oi.product_id " +
+                            "ON DUPLICATE KEY UPDATE product_name = VALUES(product_name), " +
+                            "sold_quantity = sold_quantity + VALUES(sold_quantity), " +
+                            "sales_amount = sales_amount + VALUES(sales_amount)", args);
+
+        jdbcTemplate.update("INSERT INTO order_items_archive (" + ITEM_COLUMNS + ") " +
+                            "SELECT " + ITEM_COLUMNS + " FROM order_items WHERE order_id IN (" + in + ")", args);
+        jdbcTemplate.update("INSERT INTO orders_archive (" + ORDER_COLUMNS + ") " +
+                            "SELECT " + ORDER_COLUMNS + " FROM orders WHERE id IN (" + in + ")", args);
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (" + in + ")", args);
+        jdbcTemplate.update("DELETE FROM orders WHERE id IN (" + in + ")", args);
+        return ids.size();
+    }
+
+    // ==================== 读取归档数据 ====================
+
+    /**
+     * 归档订单详情（订单、明细、用户），不存在或无权查看时返回 null
+     */
+    public Order findDetail(Long id, String username, boolean admin) {
+        if (!enabled) {
+            return null;
+        }
+        List<Order> orders = jdbcTemplate.query(
+            "SELECT o.id, o.user_id, o.request_id, o.total_price, o.status, o.created_at, o.updated_at " +
+            "FROM orders_archive o LEFT JOIN users u ON u.id = o.user_id " +
+            "WHERE o.id = ? AND (u.username = ? OR ?)",
+            (rs, i) -> {
+                Order order = new Order();
+                order.setId(rs.getLong("id"));
+                order.setUserId(rs.getLong("user_id"));
+                order.setRequestId(rs.getString("request_id"));
+                order.setTotalPrice(rs.getBigDecimal("total_price"));
+                order.setStatus(rs.getString("status"));
+                Timestamp created = rs.getTimestamp("created_at");
+                Timestamp updated = rs.getTimestamp("updated_at");
+                order.setCreatedAt(created != null ? created.toLocalDateTime() : null);
+                order.setUpdatedAt(updated != null ? updated.toLocalDateTime() : null);
+                return order;
+            }, id, username, admin);
+        if (orders.isEmpty()) {
+            return null;
+        }
+        Order order = orders.get(0);
+        order.setUser(userRepository.findById(order.getUserId()).orElse(null));
+        order.setOrderItems(jdbcTemplate.query(
+            "SELECT " + ITEM_COLUMNS + " FROM order_items_archive WHERE order_id = ? ORDER BY id",
+            (rs, i) -> {
+                OrderItem item = new OrderItem();
+                item.setId(rs.getLong("id"));
+                item.setOrder(order);
+                item.setProductId(rs.getLong("product_id"));
+                item.setProductName(rs.getString("product_name"));
+                item.setPrice(rs.getBigDecimal("price"));
+                item.setQuantity(rs.getInt("quantity"));
+                item.setSubtotal(rs.getBigDecimal("subtotal"));
+                return item;
+            }, id));
+        return order;
+    }
+
+    /**
+     * 归档表中符合条件的一页订单，游标规则与 OrderRepositoryCustom.findFilteredPage 相同
+     */
+    public List<OrderSummaryDTO> findFilteredPage(OrderFilter filter, LocalDateTime createdAt, Long id,
+                                                  boolean newer, int limit) {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT " + SUMMARY_COLUMNS + " FROM orders_archive WHERE 1 = 1");
+        appendFilters(sql, args, filter);
+        if (newer) {
+            sql.append(" AND (created_at > ? OR (created_at = ? AND id > ?)) ORDER BY created_at ASC, id ASC");
+        } else {
+            sql.append(" AND (created_at < ? OR (created_at = ? AND id < ?)) ORDER BY created_at DESC, id DESC");
+        }
+        args.add(Timestamp.valueOf(createdAt));
+        args.add(Timestamp.valueOf(createdAt));
+        args.add(id);
+        sql.append(" LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), SUMMARY_MAPPER, args.toArray());
+    }
+
+    /**
+     * 归档表中符合条件的订单数，最多数到 cap（超过时返回 cap + 1）；没有条件时返回统计信息中的估算行数
+     */
+    public long countFiltered(OrderFilter filter, int cap) {
+        if (!enabled) {
+            return 0;
+        }
+        if (filter.isEmpty()) {
+            Long rows = jdbcTemplate.queryForObject(
+                "SELECT TABLE_ROWS FROM information_schema.TABLES " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'orders_archive'", Long.class);
+            return rows != null ? rows : 0;
+        }
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM (SELECT 1 FROM orders_archive WHERE 1 = 1");
+        appendFilters(sql, args, filter);
+        sql.append(" LIMIT ?) t");
+        args.add(cap + 1);
+        Long count = jdbcTemplate.queryForObject(sql.toString(), Long.class, args.toArray());
+        return count != null ? count : 0;
+    }
+
+    private void appendFilters(StringBuilder sql, List<Object> args, OrderFilter filter) {
+        if (filter.getStatus() != null) {
+            sql.append(" AND status = ?");
+            args.add(filter.getStatus());
+        }
+        if (filter.getUserId() != null) {
+            sql.append(" AND user_id = ?");
+            args.add(filter.getUserId());
+        }
+        if (filter.getCreatedFrom() != null) {
+            sql.append(" AND created_at >= ?");
+            args.add(Timestamp.valueOf(filter.getCreatedFrom()));
+        }
+        if (filter.getCreatedTo() != null) {
+            sql.append(" AND created_at < ?");
+            args.add(Timestamp.valueOf(filter.getCreatedTo()));
+        }
+        if (filter.getMinAmount() != null) {
+            sql.append(" AND total_price >= ?");
+            args.add(filter.getMinAmount());
+        }
+        if (filter.getMaxAmount() != null) {
+            sql.append(" AND total_price <= ?");
+            args.add(filter.getMaxAmount());
+        }
+    }
+
+    // ==================== 归档汇总 ====================
+
+    /**
+     * 已归档的某状态订单数
+     */
+    public long archivedCount(String status) {
+        Object[] totals = loadTotals().get(status);
+        return totals != null ? (Long) totals[0] : 0;
+    }
+
+    /**
+     * 已归档的所有订单数
+     */
+    public long archivedCount() {
+        long count = 0;
+        for (Object[] totals : loadTotals().values()) {
+            count += (Long) totals[0];
+        }
+        return count;
+    }
+
+    /**
+     * 已归档的某状态订单金额
+     */
+    public BigDecimal archivedAmount(String status) {
+        Object[] totals = loadTotals().get(status);
+        return totals != null ? (BigDecimal) totals[1] : BigDecimal.ZERO;
+    }
+
+    /**
+     * 已归档的已完成订单中各商品的销量（商品 ID -> 销量）
+     */
+    public Map<Long, ProductSalesDTO> archivedProductSales() {
+        loadTotals();
+        return productSales;
+    }
+
+    private Map<String, Object[]> loadTotals() {
+        if (!enabled) {
+            return Collections.emptyMap();
+        }
+        long now = System.currentTimeMillis();
+        if (now - totalsLoadedAt < totalsCacheTtlMs) {
+            return statusTotals;
+        }
+        try {
+            Map<String, Object[]> totals = new HashMap<>();
+            jdbcTemplate.query("SELECT status, order_count, total_amount FROM order_archive_totals",
+                rs -> {
+                    totals.put(rs.getString("status"),
+                               new Object[] {rs.getLong("order_count"), rs.getBigDecimal("total_amount")});
+                });
+            Map<Long, ProductSalesDTO> sales = new LinkedHashMap<>();
+            jdbcTemplate.query("SELECT product_id, product_name, sold_quantity, sales_amount FROM order_archive_product_sales",
+                rs -> {
+                    ProductSalesDTO dto = new ProductSalesDTO();
+                    dto.setProductId(rs.getLong("product_id"));
+                    dto.setProductName(rs.getString("product_name"));
+                    dto.setSoldQuantity(rs.getLong("sold_quantity"));
+                    dto.setSalesAmount(rs.getBigDecimal("sales_amount"));
+                    sales.put(dto.getProductId(), dto);
+                });
+            statusTotals = totals;
+            productSales = sales;
+            totalsLoadedAt = now;
+        } catch (Exception e) {
+            System.err.println("读取订单归档汇总失败：" + e.getMessage());
+        }
+        return statusTotals;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+}
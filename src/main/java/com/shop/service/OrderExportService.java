@@ -0,0 +1,152 @@
+package com.shop.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.shop.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 订单导出（财务对账）
+ * 订单与明细在一个只读事务中通过单向流式游标逐行读取，读一行写一行到响应，内存占用与订单量无关；
+ * 按订单 ID 排序，中断后可以从已完整写出的最后一个订单 ID 继续导出；
+ * 包括已归档的订单时，先读归档表再读在线表，两个游标各自有序，不在数据库中合并排序
+ */
+@Service
+public class OrderExportService {
+
+    // CSV 列顺序（第一行为表头），每行一个订单明细
+    private static final String[] COLUMNS = {"order_id", "user_id", "status", "total_price", "created_at",
+                                             "product_id", "product_name", "price", "quantity", "subtotal"};
+
+    // 不限制下单时间时使用的范围（MySQL DATETIME 的上下限）
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1000, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 导出下单时间在 [from, to) 内、ID 大于 afterId 的订单及明细，format 为 csv 或 jsonl，返回写出的行数
+     * from、to 为 null 时不限制；范围早于归档界限时一并导出已归档的订单
+     */
+    @Transactional(readOnly = true)
+    public long exportOrders(Writer writer, String format, LocalDateTime from, LocalDateTime to, long afterId)
+            throws IOException {
+        boolean jsonl = "jsonl".equalsIgnoreCase(format);
+        LocalDateTime start = from != null ? from : EARLIEST;
+        LocalDateTime end = to != null ? to : LATEST;
+        boolean withArchive = orderArchiveService.isEnabled() && start.isBefore(orderArchiveService.horizon());
+
+        if (!jsonl) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\n");
+        }
+        long count = 0;
+        long liveAfterId = afterId;
+        if (withArchive) {
+            // 归档表和在线表分别按订单 ID 顺序流式读取（不用 UNION ALL ... ORDER BY，避免数据库先汇总再排序整个结果）
+            // 归档的都是早期订单，只有少量早于界限但尚未完结的订单还在在线表中、ID 落在归档范围内，
+            // 先把它们读入内存与归档表的游标按订单 ID 归并，整体仍按订单 ID 排序，可以从 afterId 继续
+            Long maxArchivedId = orderRepository.findMaxArchivedId();
+            if (maxArchivedId != null && maxArchivedId > afterId) {
+                List<Object[]> unarchived = orderRepository.findExportRowsUpTo(start, end, afterId, maxArchivedId);
+                int next = 0;
+                try (Stream<Object[]> rows = orderRepository.streamArchivedExport(start, end, afterId)) {
+                    Iterator<Object[]> iterator = rows.iterator();
+                    while (iterator.hasNext()) {
+                        Object[] row = iterator.next();
+                        long orderId = toLong(row[0]);
+                        while (next < unarchived.size() && toLong(unarchived.get(next)[0]) < orderId) {
+                            writeRow(writer, unarchived.get(next++), jsonl);
+                            count++;
+                        }
+                        writeRow(writer, row, jsonl);
+                        count++;
+                    }
+                }
+                for (; next < unarchived.size(); next++) {
+                    writeRow(writer, unarchived.get(next), jsonl);
+                    count++;
+                }
+                liveAfterId = maxArchivedId;
+            }
+        }
+        try (Stream<Object[]> rows = orderRepository.streamExport(start, end, liveAfterId)) {
+            Iterator<Object[]> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                writeRow(writer, iterator.next(), jsonl);
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    private void writeRow(Writer writer, Object[] row, boolean jsonl) throws IOException {
+        if (jsonl) {
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("order_id", toLong(row[0]));
+            node.put("user_id", toLong(row[1]));
+            node.put("status", (String) row[2]);
+            node.put("total_price", (BigDecimal) row[3]);
+            node.put("created_at", toText(row[4]));
+            node.put("product_id", toLong(row[5]));
+            node.put("product_name", (String) row[6]);
+            node.put("price", (BigDecimal) row[7]);
+            node.put("quantity", toLong(row[8]));
+            node.put("subtotal", (BigDecimal) row[9]);
+            writer.write(objectMapper.writeValueAsString(node));
+        } else {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(csvEscape(toText(row[i])));
+            }
+        }
+        writer.write("\n");
+    }
+
+    private Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+
+    private String toText(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toString();
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        return value.toString();
+    }
+
+    private String csvEscape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+}
\ No newline at end of file
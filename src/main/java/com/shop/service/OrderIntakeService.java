@@ -0,0 +1,346 @@
+package com.shop.service;
+
+import com.shop.dto.CartItem;
+import com.shop.entity.Order;
+import com.shop.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步下单
+ * 提交订单的请求只校验购物车、生成不可变的下单命令放入有界队列，立即返回"处理中"页面；
+ * 固定数量的写入线程取出命令扣减库存并写入订单，数据库暂时不可用（死锁、锁等待超时、连接失败）时按退避重试。
+ * 每个命令带唯一的请求 ID 写入 orders.request_id，重试或重复处理时不会生成第二个订单
+ */
+@Service
+public class OrderIntakeService {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 是否开启异步下单（关闭时在请求线程中同步下单）
+     */
+    @Value("${shop.order-intake.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 排队中的下单命令上限，超过后拒绝下单
+     */
+    @Value("${shop.order-intake.queue-capacity:2000}")
+    private int queueCapacity;
+
+    @Value("${shop.order-intake.workers:4}")
+    private int workers;
+
+    /**
+     * 数据库暂时不可用时的最大尝试次数和首次重试间隔（毫秒，之后每次翻倍）
+     */
+    @Value("${shop.order-intake.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${shop.order-intake.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    /**
+     * 失败结果保留时间（毫秒），用户在这段时间内打开处理页面可以看到失败原因
+     */
+    @Value("${shop.order-intake.result-ttl-ms:600000}")
+    private long resultTtlMs;
+
+    private BlockingQueue<OrderCommand> queue;
+    // 请求 ID -> 处理中或已失败的命令；写入成功后移除，之后按请求 ID 从数据库查订单
+    private final Map<String, OrderCommand> commands = new ConcurrentHashMap<>();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private TransactionTemplate transactionTemplate;
+    private Counter persisted;
+    private Counter failed;
+    private Counter retried;
+    private Counter rejected;
+    private Timer lag;
+
+    /**
+     * 下单命令：提交时复制购物车，之后不再变化
+     */
+    public static final class OrderCommand {
+        private final String requestId;
+        private final Long userId;
+        private final List<CartItem> items;
+        private final long submittedAt;
+        private volatile String error;
+        private volatile long completedAt;
+
+        OrderCommand(String requestId, Long userId, List<CartItem> items) {
+            this.requestId = requestId;
+            this.userId = userId;
+            this.items = items;
+            this.submittedAt = System.currentTimeMillis();
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        /**
+         * 购物车商品的副本（失败时用于恢复购物车）
+         */
+        public List<CartItem> getItems() {
+            List<CartItem> copy = new ArrayList<>(items.size());
+            for (CartItem item : items) {
+                copy.add(copyOf(item));
+            }
+            return copy;
+        }
+
+        /**
+         * 失败原因，处理中时为 null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        persisted = Counter.builder("shop.orders.intake").tag("result", "persisted").register(meterRegistry);
+        failed = Counter.builder("shop.orders.intake").tag("result", "failed").register(meterRegistry);
+        rejected = Counter.builder("shop.orders.intake").tag("result", "rejected").register(meterRegistry);
+        retried = Counter.builder("shop.orders.intake.retries").register(meterRegistry);
+        lag = Timer.builder("shop.orders.intake.lag").register(meterRegistry);
+        Gauge.builder("shop.orders.intake.queue.size", this, s -> s.queue.size()).register(meterRegistry);
+        // 队首命令已等待的时间（毫秒），写入跟不上时持续增长
+        Gauge.builder("shop.orders.intake.queue.oldest.ms", this, OrderIntakeService::oldestWaitMs)
+            .register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "order-intake-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            workerThreads.add(thread);
+        }
+    }
+
+    /**
+     * 停止写入线程，把队列中剩下的命令处理完再退出
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Thread thread : workerThreads) {
+            thread.interrupt();
+        }
+        for (Thread thread : workerThreads) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        OrderCommand command;
+        while ((command = queue.poll()) != null) {
+            process(command);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交下单命令，返回请求 ID；队列已满时抛出异常
+     * requestId 为表单的幂等令牌（为 null 时生成新的），同一令牌正在处理时直接返回，不重复入队
+     */
+    public String submit(Long userId, List<CartItem> cart, String requestId) {
+        if (requestId != null) {
+            OrderCommand existing = commands.get(requestId);
+            if (existing != null && existing.userId.equals(userId) && existing.error == null) {
+                return requestId;
+            }
+        }
+        if (cart.isEmpty()) {
+            throw new RuntimeException("购物车为空");
+        }
+        List<CartItem> items = new ArrayList<>(cart.size());
+        for (CartItem item : cart) {
+            items.add(copyOf(item));
+        }
+        OrderCommand command = new OrderCommand(requestId != null ? requestId : UUID.randomUUID().toString(),
+                                                userId, Collections.unmodifiableList(items));
+        OrderCommand existing = commands.putIfAbsent(command.requestId, command);
+        if (existing != null) {
+            if (existing.userId.equals(userId) && existing.error == null) {
+                return command.requestId;
+            }
+            throw new RuntimeException("请刷新页面后重新提交订单");
+        }
+        if (!queue.offer(command)) {
+            commands.remove(command.requestId);
+            rejected.increment();
+            throw new RuntimeException("下单人数过多，请稍后再试");
+        }
+        return command.requestId;
+    }
+
+    /**
+     * 请求对应的订单，还没写入时返回 null
+     */
+    public Order findOrder(String requestId) {
+        return orderRepository.findByRequestId(requestId).orElse(null);
+    }
+
+    /**
+     * 处理中或已失败的命令；已写入或已过期时返回 null
+     */
+    public OrderCommand getCommand(String requestId) {
+        return commands.get(requestId);
+    }
+
+    /**
+     * 失败结果已展示给用户，不再保留
+     */
+    public void forget(String requestId) {
+        OrderCommand command = commands.get(requestId);
+        if (command != null && command.error != null) {
+            commands.remove(requestId);
+        }
+    }
+
+    /**
+     * 清理过期的失败结果
+     */
+    @Scheduled(fixedDelayString = "${shop.order-intake.cleanup-interval-ms:60000}")
+    public void purgeResults() {
+        long cutoff = System.currentTimeMillis() - resultTtlMs;
+        commands.values().removeIf(command -> command.error != null && command.completedAt < cutoff);
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                process(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void process(OrderCommand command) {
+        try {
+            persist(command);
+            commands.remove(command.requestId);
+            persisted.increment();
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            command.error = e instanceof RuntimeException && !(e instanceof TransientDataAccessException)
+                                && e.getMessage() != null ? e.getMessage() : "下单失败，请重试";
+            command.completedAt = System.currentTimeMillis();
+            failed.increment();
+            System.err.println("异步下单失败：" + command.requestId + "，" + e.getMessage());
+        } finally {
+            lag.record(System.currentTimeMillis() - command.submittedAt, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 在一个事务中扣减库存并写入订单；暂时性错误按退避重试，库存不足等业务错误直接失败
+     */
+    private void persist(OrderCommand command) throws InterruptedException {
+        long backoff = retryBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    // 上一次尝试可能已经提交（例如提交成功但连接随后断开）
+                    if (orderRepository.findByRequestId(command.requestId).isPresent()) {
+                        return;
+                    }
+                    Map<Long, Integer> quantities = new HashMap<>();
+                    for (CartItem item : command.items) {
+                        quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+                    }
+                    productService.reserveStock(quantities);
+                    orderService.saveOrder(command.userId, command.items, command.requestId);
+                });
+                return;
+            } catch (DataIntegrityViolationException e) {
+                // 同一请求 ID 已由别的线程写入
+                if (orderRepository.findByRequestId(command.requestId).isPresent()) {
+                    return;
+                }
+                throw e;
+            } catch (TransientDataAccessException | CannotCreateTransactionException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                retried.increment();
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        }
+    }
+
+    private double oldestWaitMs() {
+        OrderCommand head = queue.peek();
+        return head == null ? 0 : System.currentTimeMillis() - head.submittedAt;
+    }
+
+    private static CartItem copyOf(CartItem item) {
+        CartItem copy = new CartItem();
+        copy.setProductId(item.getProductId());
+        copy.setProductName(item.getProductName());
+        copy.setPrice(item.getPrice());
+        copy.setQuantity(item.getQuantity());
+        copy.setImageUrl(item.getImageUrl());
+        return copy;
+    }
+}
\ No newline at end of file
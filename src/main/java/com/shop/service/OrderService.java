@@ -2,18 +2,37 @@ package com.shop.service;
 import java.util.ArrayList;
 import java.util.Arrays;
 import com.shop.dto.CartItem;
+import com.shop.dto.OrderFilter;
+import com.shop.dto.OrderPage;
+import com.shop.dto.OrderSummaryDTO;
 import com.shop.dto.ProductSalesDTO;
 import com.shop.entity.Order;
 import com.shop.entity.OrderItem;
+import com.shop.entity.OrderStatus;
 import com.shop.entity.User;
 import com.shop.repository.OrderRepository;
 import com.shop.repository.OrderItemRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 订单业务逻辑类
@@ -33,28 +52,128 @@ public class OrderService {
     @Autowired
     private ProductService productService;
     
+    @Autowired
+    private IdempotencyService idempotencyService;
+    
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+    
+    @Autowired
+    private SalesCounterService salesCounterService;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    /**
+     * 库存预留时间（毫秒）：待支付订单超过这个时间自动取消并归还库存
+     */
+    @Value("${shop.orders.reservation-ttl-ms:1800000}")
+    private long reservationTtlMs;
+    
+    /**
+     * 超时清理每批处理的订单数
+     */
+    @Value("${shop.orders.expiry-batch-size:200}")
+    private int expiryBatchSize;
+    
+    // 第一页的游标时间，比任何订单都晚（MySQL DATETIME 的上限）
+    private static final LocalDateTime NEWEST_CURSOR_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    
+    /**
+     * 管理后台带筛选条件时订单数最多数到多少
+     */
+    public static final int CONSOLE_COUNT_CAP = 10000;
+    private static final int COUNT_CACHE_SIZE = 1000;
+    
+    /**
+     * 管理后台订单总数缓存时间（毫秒）
+     */
+    @Value("${shop.orders.count-cache-ttl-ms:60000}")
+    private long countCacheTtlMs;
+    
+    // 筛选条件 -> {订单数, 计算时间}
+    private final Map<String, long[]> countCache = new ConcurrentHashMap<>();
+    
+    /**
+     * 订单状态转换被并发修改时的最大尝试次数
+     */
+    @Value("${shop.orders.transition-attempts:3}")
+    private int transitionAttempts;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
     /**
      * 创建订单（从购物车）
      */
     @Transactional
     public Order createOrder(User user) {
+        return createOrder(user, null);
+    }
+    
+    /**
+     * 创建订单（带幂等令牌）：先占用令牌再扣库存，重复提交在占用令牌时失败，不会重复扣减
+     */
+    @Transactional
+    public Order createOrder(User user, String idempotencyKey) {
         // 1. 获取购物车
         List<CartItem> cart = cartService.getCart();
         if (cart.isEmpty()) {
             throw new RuntimeException("购物车为空");
         }
+        if (idempotencyKey != null) {
+            idempotencyService.claim(IdempotencyService.SUBMIT, idempotencyKey, user.getId(), null);
+        }
+        
+        // 2. 扣减库存（批量条件更新，库存不足时整个订单回滚）
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (CartItem cartItem : cart) {
+            quantities.merge(cartItem.getProductId(), cartItem.getQuantity(), Integer::sum);
+        }
+        productService.reserveStock(quantities);
+        
+        // 3. 保存订单和明细
+        Order order = saveOrder(user.getId(), cart);
+        if (idempotencyKey != null) {
+            idempotencyService.complete(IdempotencyService.SUBMIT, idempotencyKey, user.getId(), order.getId());
+        }
+        
+        // 4. 清空购物车
+        cartService.clearCart();
+        
+        return order;
+    }
+    
+    /**
+     * 保存订单和订单明细（库存已由调用方扣减，必须在调用方的事务中执行）
+     */
+    @Transactional
+    public Order saveOrder(Long userId, List<CartItem> items) {
+        return saveOrder(userId, items, null);
+    }
+    
+    /**
+     * 保存订单并记录下单请求 ID（异步下单使用）
+     */
+    @Transactional
+    public Order saveOrder(Long userId, List<CartItem> items, String requestId) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (CartItem cartItem : items) {
+            total = total.add(cartItem.getSubtotal());
+        }
         
-        // 2. 创建订单
         Order order = new Order();
-        order.setUserId(user.getId());
-        order.setTotalPrice(cartService.getCartTotal());
+        order.setUserId(userId);
+        order.setRequestId(requestId);
+        order.setTotalPrice(total);
         order.setStatus("PENDING");
         
-        // 3. 保存订单（先保存获得订单 ID）
-        order = orderRepository.save(order);
-        
-        // 4. 创建订单明细
-        for (CartItem cartItem : cart) {
+        // 明细随订单级联保存，ID 来自序列池，提交时订单和明细各一条批量 INSERT
+        for (CartItem cartItem : items) {
             OrderItem orderItem = new OrderItem();
             orderItem.setOrder(order);
             orderItem.setProductId(cartItem.getProductId());
@@ -62,17 +181,11 @@ public class OrderService {
             orderItem.setPrice(cartItem.getPrice());
             orderItem.setQuantity(cartItem.getQuantity());
             orderItem.setSubtotal(cartItem.getSubtotal());
-            
-            orderItemRepository.save(orderItem);
-            
-            // 5. 减少库存
-            productService.updateStock(cartItem.getProductId(), -cartItem.getQuantity());
+            order.getOrderItems().add(orderItem);
         }
-        
-        // 6. 清空购物车
-        cartService.clearCart();
-        
-        return order;
+        Order saved = orderRepository.save(order);
+        salesCounterService.orderCreated(saved);
+        return saved;
     }
     
     /**
@@ -82,6 +195,169 @@ public class OrderService {
         return orderRepository.findByUserIdOrderByCreatedAtDesc(userId);
     }
     
+    /**
+     * 用户订单分页（按下单时间从新到旧，status 为 null 时不筛选）
+     * after 为下一页游标（更早的订单），before 为上一页游标（更新的订单），游标格式为 "下单时间_订单ID"；
+     * 多取一条判断是否还有下一页，不做 COUNT
+     */
+    public OrderPage findUserOrderPage(Long userId, String status, String after, String before, int size) {
+        boolean backward = before != null && !before.isEmpty();
+        OrderSummaryDTO cursor = parseCursor(backward ? before : after);
+        if (cursor == null) {
+            // 没有游标（或游标无效）时从最新的订单开始
+            backward = false;
+        }
+        LocalDateTime createdAt = cursor != null ? cursor.getCreatedAt() : NEWEST_CURSOR_TIME;
+        Long id = cursor != null ? cursor.getId() : Long.MAX_VALUE;
+        Pageable limit = PageRequest.of(0, size + 1);
+        
+        List<OrderSummaryDTO> rows;
+        if (status == null) {
+            rows = backward ? orderRepository.findUserPageNewer(userId, createdAt, id, limit)
+                            : orderRepository.findUserPageOlder(userId, createdAt, id, limit);
+        } else {
+            rows = backward ? orderRepository.findUserPageByStatusNewer(userId, status, createdAt, id, limit)
+                            : orderRepository.findUserPageByStatusOlder(userId, status, createdAt, id, limit);
+        }
+        if (needsArchive(rows, size, createdAt, backward)) {
+            OrderFilter filter = new OrderFilter();
+            filter.setUserId(userId);
+            filter.setStatus(status);
+            rows = merge(rows, orderArchiveService.findFilteredPage(filter, createdAt, id, backward, size + 1),
+                         size + 1, backward);
+        }
+        return toPage(rows, size, backward, cursor != null);
+    }
+    
+    /**
+     * 管理后台订单分页：任意组合状态、用户、下单时间、金额筛选，游标规则与 findUserOrderPage 相同
+     */
+    public OrderPage findConsolePage(OrderFilter filter, String after, String before, int size) {
+        boolean backward = before != null && !before.isEmpty();
+        OrderSummaryDTO cursor = parseCursor(backward ? before : after);
+        if (cursor == null) {
+            backward = false;
+        }
+        LocalDateTime createdAt = cursor != null ? cursor.getCreatedAt() : NEWEST_CURSOR_TIME;
+        Long id = cursor != null ? cursor.getId() : Long.MAX_VALUE;
+        
+        List<OrderSummaryDTO> rows = orderRepository.findFilteredPage(filter, createdAt, id, backward, size + 1);
+        if (needsArchive(rows, size, createdAt, backward)) {
+            rows = merge(rows, orderArchiveService.findFilteredPage(filter, createdAt, id, backward, size + 1),
+                         size + 1, backward);
+        }
+        return toPage(rows, size, backward, cursor != null);
+    }
+    
+    /**
+     * 符合筛选条件的订单数（近似值，带缓存）
+     * 没有筛选条件时取 InnoDB 统计的表行数；有条件时最多数到 CONSOLE_COUNT_CAP，超过时返回 CONSOLE_COUNT_CAP + 1
+     */
+    public long approximateCount(OrderFilter filter) {
+        String key = filter.toString();
+        long now = System.currentTimeMillis();
+        long[] cached = countCache.get(key);
+        if (cached != null && now - cached[1] < countCacheTtlMs) {
+            return cached[0];
+        }
+        long count;
+        if (filter.isEmpty()) {
+            Long estimate = orderRepository.estimateRowCount();
+            count = (estimate != null ? estimate : 0) + orderArchiveService.countFiltered(filter, CONSOLE_COUNT_CAP);
+        } else {
+            count = orderRepository.countFiltered(filter, CONSOLE_COUNT_CAP);
+            if (count <= CONSOLE_COUNT_CAP) {
+                count = Math.min(count + orderArchiveService.countFiltered(filter, CONSOLE_COUNT_CAP),
+                                 CONSOLE_COUNT_CAP + 1);
+            }
+        }
+        if (countCache.size() >= COUNT_CACHE_SIZE) {
+            countCache.clear();
+        }
+        countCache.put(key, new long[] {count, now});
+        return count;
+    }
+    
+    /**
+     * 这一页是否还要查归档表：归档表只有早于归档界限的订单
+     * 向旧翻页时在线表不够一页，或已经翻到界限之前；向新翻页时游标本身早于界限
+     */
+    private boolean needsArchive(List<OrderSummaryDTO> rows, int size, LocalDateTime createdAt, boolean backward) {
+        if (!orderArchiveService.isEnabled()) {
+            return false;
+        }
+        LocalDateTime horizon = orderArchiveService.horizon();
+        if (backward) {
+            return createdAt.isBefore(horizon);
+        }
+        return rows.size() <= size || rows.get(rows.size() - 1).getCreatedAt().isBefore(horizon);
+    }
+    
+    /**
+     * 合并在线表和归档表各自排好序的结果，保持游标顺序，取前 limit 条
+     */
+    private List<OrderSummaryDTO> merge(List<OrderSummaryDTO> live, List<OrderSummaryDTO> archived,
+                                        int limit, boolean backward) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        Comparator<OrderSummaryDTO> order = Comparator.comparing(OrderSummaryDTO::getCreatedAt)
+                                                      .thenComparing(OrderSummaryDTO::getId);
+        if (!backward) {
+            order = order.reversed();
+        }
+        List<OrderSummaryDTO> rows = new ArrayList<>(live.size() + archived.size());
+        rows.addAll(live);
+        rows.addAll(archived);
+        rows.sort(order);
+        return rows.size() > limit ? rows.subList(0, limit) : rows;
+    }
+    
+    /**
+     * 组装一页结果：rows 比 size 多一条时说明后面还有；反向翻页查出的是从旧到新，需要反转
+     */
+    private OrderPage toPage(List<OrderSummaryDTO> rows, int size, boolean backward, boolean hasCursor) {
+        boolean more = rows.size() > size;
+        List<OrderSummaryDTO> items = new ArrayList<>(more ? rows.subList(0, size) : rows);
+        if (backward) {
+            Collections.reverse(items);
+        }
+        
+        String prev = null;
+        String next = null;
+        if (!items.isEmpty()) {
+            boolean hasPrev = backward ? more : hasCursor;
+            boolean hasNext = backward || more;
+            prev = hasPrev ? cursorOf(items.get(0)) : null;
+            next = hasNext ? cursorOf(items.get(items.size() - 1)) : null;
+        }
+        return new OrderPage(items, prev, next);
+    }
+    
+    private String cursorOf(OrderSummaryDTO order) {
+        return order.getCreatedAt() + "_" + order.getId();
+    }
+    
+    /**
+     * 解析游标，格式不正确时返回 null（从第一页开始）
+     */
+    private OrderSummaryDTO parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        int split = cursor.lastIndexOf('_');
+        if (split <= 0) {
+            return null;
+        }
+        try {
+            LocalDateTime createdAt = LocalDateTime.parse(cursor.substring(0, split));
+            Long id = Long.valueOf(cursor.substring(split + 1));
+            return new OrderSummaryDTO(id, null, null, createdAt);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+    }
+    
     /**
      * 根据 ID 查找订单
      */
@@ -89,6 +365,15 @@ public class OrderService {
         return orderRepository.findById(id).orElse(null);
     }
     
+    /**
+     * 订单详情（订单、明细、用户一次查出），不存在或无权查看时返回 null
+     * 在线表中没有时再查归档表（归档订单只读）
+     */
+    public Order findDetail(Long id, String username, boolean admin) {
+        Order order = orderRepository.findDetail(id, username, admin).orElse(null);
+        return order != null ? order : orderArchiveService.findDetail(id, username, admin);
+    }
+    
     /**
      * 查找订单明细
      */
@@ -97,17 +382,49 @@ public class OrderService {
     }
     
     /**
-     * 更新订单状态
+     * 更新订单状态（管理后台），只允许状态机中的转换，返回更新后的订单
      */
-    @Transactional
     public Order updateStatus(Long orderId, String status) {
-        Order order = findById(orderId);
-        if (order == null) {
-            throw new RuntimeException("订单不存在");
+        transition(orderId, OrderStatus.parse(status));
+        return findById(orderId);
+    }
+    
+    /**
+     * 订单状态转换：读取当前状态，检查状态机，再用 UPDATE ... WHERE status = 当前状态 比较并交换，不加锁等待；
+     * 期间状态被并发修改（更新 0 行）时重新读取并重试，最多 transitionAttempts 次。
+     * 转换为 CANCELLED 时在同一事务中归还库存。返回转换前的状态；已经是目标状态时不做修改
+     * 必须在事务外调用，每次尝试使用独立事务，重试时才能读到其他事务提交的状态
+     */
+    public OrderStatus transition(Long orderId, OrderStatus target) {
+        for (int attempt = 1; ; attempt++) {
+            OrderStatus current = orderRepository.findStatusById(orderId).map(OrderStatus::parse)
+                .orElseThrow(() -> new RuntimeException("订单不存在"));
+            if (current == target) {
+                return current;
+            }
+            if (!current.canTransitionTo(target)) {
+                throw new OrderStatusConflictException(orderId, current, target,
+                    "订单当前为「" + current.getLabel() + "」，不能改为「" + target.getLabel() + "」");
+            }
+            Boolean changed = transactionTemplate.execute(status -> applyTransition(orderId, current, target));
+            if (Boolean.TRUE.equals(changed)) {
+                return current;
+            }
+            if (attempt >= transitionAttempts) {
+                throw new OrderStatusConflictException(orderId, null, target, "订单状态正在被其他操作修改，请刷新后重试");
+            }
         }
-
-        order.setStatus(status);
-        return orderRepository.save(order);
+    }
+    
+    private boolean applyTransition(Long orderId, OrderStatus from, OrderStatus to) {
+        if (orderRepository.compareAndSetStatus(orderId, from.name(), to.name(), LocalDateTime.now()) == 0) {
+            return false;
+        }
+        if (to == OrderStatus.CANCELLED) {
+            releaseItems(List.of(orderId));
+        }
+        salesCounterService.statusChanged(List.of(orderId), from.name(), to.name());
+        return true;
     }
     
     /**
@@ -115,32 +432,95 @@ public class OrderService {
      */
     @Transactional
     public void payOrder(Long orderId) {
-        updateStatus(orderId, "PAID");
+        payOrder(orderId, null, null);
     }
     
     /**
-     * 取消订单
+     * 支付订单（带幂等令牌）：令牌和订单状态在同一事务中更新，重复提交在占用令牌时失败
+     * 状态用 PENDING → PAID 比较并交换，与取消、超时清理并发时只有一方成功
      */
     @Transactional
-    public void cancelOrder(Long orderId) {
+    public void payOrder(Long orderId, Long userId, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            idempotencyService.claim(IdempotencyService.PAY, idempotencyKey, userId, orderId);
+        }
         Order order = findById(orderId);
         if (order == null) {
             throw new RuntimeException("订单不存在");
         }
-        
-        // 只能取消待支付的订单
-        if (!"PENDING".equals(order.getStatus())) {
-            throw new RuntimeException("只能取消待支付的订单");
+        if (isExpired(order)) {
+            throw new RuntimeException("订单已超时，库存已释放，请重新下单");
         }
-        
-        // 恢复库存
-        List<OrderItem> items = findOrderItems(orderId);
-        for (OrderItem item : items) {
-            productService.updateStock(item.getProductId(), item.getQuantity());
+        int updated = orderRepository.compareAndSetStatus(orderId, OrderStatus.PENDING.name(),
+                                                          OrderStatus.PAID.name(), LocalDateTime.now());
+        if (updated == 0) {
+            throw new OrderStatusConflictException(orderId, null, OrderStatus.PAID,
+                "只能支付待支付的订单（订单可能已支付、已取消或已超时），请刷新后查看");
         }
-        
-        // 更新状态
-        updateStatus(orderId, "CANCELLED");
+        salesCounterService.statusChanged(List.of(orderId), OrderStatus.PENDING.name(), OrderStatus.PAID.name());
+    }
+    
+    /**
+     * 取消订单（PENDING → CANCELLED，并归还库存）
+     */
+    public void cancelOrder(Long orderId) {
+        transition(orderId, OrderStatus.CANCELLED);
+    }
+    
+    /**
+     * 定时取消超时未支付的订单并归还库存
+     * 每批在独立事务中用 FOR UPDATE SKIP LOCKED 锁定一批订单，多个节点同时运行时各自处理不同的行
+     */
+    @Scheduled(initialDelayString = "${shop.orders.expiry-interval-ms:60000}",
+               fixedDelayString = "${shop.orders.expiry-interval-ms:60000}")
+    public void expireReservations() {
+        int total = 0;
+        try {
+            while (true) {
+                LocalDateTime cutoff = LocalDateTime.now().minus(reservationTtlMs, ChronoUnit.MILLIS);
+                Integer count = transactionTemplate.execute(status -> {
+                    List<Long> ids = orderRepository.lockExpiredPendingIds(cutoff, expiryBatchSize);
+                    if (!ids.isEmpty()) {
+                        cancelLocked(ids);
+                    }
+                    return ids.size();
+                });
+                total += count;
+                if (count < expiryBatchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("超时订单清理失败：" + e.getMessage());
+        }
+        if (total > 0) {
+            System.out.println("已取消超时未支付订单 " + total + " 个");
+        }
+    }
+    
+    /**
+     * 取消一批已加锁的待支付订单：一次批量更新归还库存，再批量修改状态
+     */
+    private void cancelLocked(List<Long> orderIds) {
+        releaseItems(orderIds);
+        orderRepository.updateStatusByIds(orderIds, OrderStatus.CANCELLED.name(), LocalDateTime.now());
+        salesCounterService.statusChanged(orderIds, OrderStatus.PENDING.name(), OrderStatus.CANCELLED.name());
+    }
+    
+    /**
+     * 归还订单明细占用的库存（一次批量更新）
+     */
+    private void releaseItems(List<Long> orderIds) {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (OrderItem item : orderItemRepository.findByOrderIdIn(orderIds)) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        productService.releaseStock(quantities);
+    }
+    
+    private boolean isExpired(Order order) {
+        return order.getCreatedAt() != null
+            && order.getCreatedAt().isBefore(LocalDateTime.now().minus(reservationTtlMs, ChronoUnit.MILLIS));
     }
     
     /**
@@ -155,28 +535,30 @@ public class OrderService {
      */
     public BigDecimal getTotalSales() {
         BigDecimal total = orderRepository.getTotalSales();
-        return total != null ? total : BigDecimal.ZERO;
+        // 只有已完成的订单会归档为已支付类状态
+        return (total != null ? total : BigDecimal.ZERO).add(orderArchiveService.archivedAmount("COMPLETED"));
     }
     
     /**
      * 统计订单数
      */
     public long getTotalOrders() {
-        return orderRepository.count();
+        return orderRepository.count() + orderArchiveService.archivedCount();
     }
     
     /**
      * 统计已支付订单数
      */
     public long getPaidOrderCount() {
-        return orderRepository.countByStatusIn(Arrays.asList("PAID", "SHIPPED", "COMPLETED"));
+        return orderRepository.countByStatusIn(Arrays.asList("PAID", "SHIPPED", "COMPLETED"))
+            + orderArchiveService.archivedCount("COMPLETED");
     }
     
     /**
      * 统计某个状态的订单金额
      */
     public BigDecimal getSalesByStatus(String status) {
-        return orderRepository.getSalesByStatus(status);
+        return orderRepository.getSalesByStatus(status).add(orderArchiveService.archivedAmount(status));
     }
 
     /**
@@ -202,14 +584,31 @@ public class OrderService {
         List<Object[]> results = orderItemRepository.getProductSalesStatistics();
         List<ProductSalesDTO> statistics = new ArrayList<>();
 
+        // 加上已归档订单的销量，按商品合并后重新按销售数量排序
+        Map<Long, ProductSalesDTO> archived = new LinkedHashMap<>();
+        for (ProductSalesDTO sales : orderArchiveService.archivedProductSales().values()) {
+            archived.put(sales.getProductId(), sales);
+        }
         for (Object[] result : results) {
             ProductSalesDTO dto = new ProductSalesDTO();
             dto.setProductId(((Number) result[0]).longValue());
             dto.setProductName((String) result[1]);
             dto.setSoldQuantity(((Number) result[2]).longValue());
             dto.setSalesAmount((BigDecimal) result[3]);
+            ProductSalesDTO old = archived.remove(dto.getProductId());
+            if (old != null) {
+                dto.setSoldQuantity(dto.getSoldQuantity() + old.getSoldQuantity());
+                dto.setSalesAmount(dto.getSalesAmount().add(old.getSalesAmount()));
+            }
             statistics.add(dto);
         }
+        for (ProductSalesDTO old : archived.values()) {
+            statistics.add(new ProductSalesDTO(old.getProductId(), old.getProductName(),
+                                               old.getSoldQuantity(), old.getSalesAmount()));
+        }
+        if (!archived.isEmpty()) {
+            statistics.sort(Comparator.comparing(ProductSalesDTO::getSoldQuantity).reversed());
+        }
 
         return statistics;
     }
@@ -218,6 +617,6 @@ public class OrderService {
      * 统计某个状态的订单数
      */
     public long countByStatus(String status) {
-        return orderRepository.countByStatus(status);
+        return orderRepository.countByStatus(status) + orderArchiveService.archivedCount(status);
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.shop.service;
+
+import com.shop.entity.OrderStatus;
+
+/**
+ * 订单状态转换冲突：当前状态不允许转换到目标状态，或重试多次仍被并发修改
+ */
+public class OrderStatusConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long orderId;
+    private final OrderStatus current;
+    private final OrderStatus target;
+
+    public OrderStatusConflictException(Long orderId, OrderStatus current, OrderStatus target, String message) {
+        super(message);
+        this.orderId = orderId;
+        this.current = current;
+        this.target = target;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    /**
+     * 冲突时读到的订单状态（未知时为 null）
+     */
+    public OrderStatus getCurrent() {
+        return current;
+    }
+
+    public OrderStatus getTarget() {
+        return target;
+    }
+}
\ No newline at end of file
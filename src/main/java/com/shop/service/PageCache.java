@@ -0,0 +1,292 @@
+package com.shop.service;
+
+import com.shop.entity.Product;
+import com.shop.event.CatalogUpdatedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 匿名用户页面输出缓存
+ * 保存渲染好的 HTML（以及预先压缩好的 gzip 版本），按 URL + 查询串索引，按总字节数做 LRU 淘汰；
+ * 每个页面记录其中出现的商品 ID，商品变更时只清除受影响的页面
+ */
+@Component
+public class PageCache {
+
+    /**
+     * 列表页把本页出现的商品 ID（Collection&lt;Long&gt;）放在这个请求属性里，用于精确失效
+     */
+    public static final String PRODUCT_IDS_ATTRIBUTE = PageCache.class.getName() + ".PRODUCT_IDS";
+
+    // 小于这个大小的页面不做 gzip
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${shop.page-cache.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * 缓存总大小上限（字节）
+     */
+    @Value("${shop.page-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    /**
+     * 单个页面大小上限（字节），超过的页面不缓存
+     */
+    @Value("${shop.page-cache.max-entry-bytes:1048576}")
+    private int maxEntryBytes;
+
+    // 访问顺序的 LinkedHashMap，最久未访问的在最前面
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    // 商品 ID -> 包含该商品的页面
+    private final Map<Long, Set<String>> keysByProduct = new HashMap<>();
+    // 所有列表页（商品的分类、库存状态、价格、名称变化会影响所有列表页的筛选和排序结果）
+    private final Set<String> listKeys = new HashSet<>();
+    private long bytes;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("shop.pagecache.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("shop.pagecache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("shop.pagecache.bytes", this, PageCache::getBytes).register(meterRegistry);
+        Gauge.builder("shop.pagecache.size", this, PageCache::size).register(meterRegistry);
+    }
+
+    /**
+     * 缓存的页面
+     */
+    public static final class Entry {
+        private final byte[] body;
+        private final byte[] gzipBody;
+        private final String contentType;
+        private final String etag;
+        private final String cacheControl;
+        private final String lastModified;
+        private final Set<Long> productIds;
+        private final boolean list;
+
+        Entry(byte[] body, byte[] gzipBody, String contentType, String etag, String cacheControl,
+              String lastModified, Set<Long> productIds, boolean list) {
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.cacheControl = cacheControl;
+            this.lastModified = lastModified;
+            this.productIds = productIds;
+            this.list = list;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * gzip 压缩后的内容，页面太小时为 null
+         */
+        public byte[] getGzipBody() {
+            return gzipBody;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getCacheControl() {
+            return cacheControl;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        long weight() {
+            return body.length + (gzipBody == null ? 0 : gzipBody.length);
+        }
+    }
+
+    /**
+     * 是否可以使用缓存（目录未加载时商品变更事件不会发出，无法失效，因此不缓存）
+     */
+    public boolean isEnabled() {
+        return enabled && catalogService.getSnapshot() != null;
+    }
+
+    /**
+     * 当前目录版本，请求开始时记录，保存时用来判断渲染期间目录是否变过
+     */
+    public long currentVersion() {
+        return catalogService.getVersion();
+    }
+
+    public synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * 保存渲染结果；version 为请求开始时的目录版本，渲染期间目录变过则不保存（页面可能是旧数据）
+     */
+    public void put(String key, byte[] body, String contentType, String etag, String cacheControl, String lastModified,
+                    Collection<Long> productIds, boolean list, long version) {
+        if (body.length == 0 || body.length > maxEntryBytes) {
+            return;
+        }
+        Entry entry = new Entry(body, gzip(body), contentType, etag, cacheControl, lastModified,
+                                productIds == null ? Set.of() : Set.copyOf(productIds), list);
+        synchronized (this) {
+            if (catalogService.getVersion() != version) {
+                return;
+            }
+            remove(key);
+            entries.put(key, entry);
+            bytes += entry.weight();
+            for (Long id : entry.productIds) {
+                keysByProduct.computeIfAbsent(id, k -> new HashSet<>()).add(key);
+            }
+            if (entry.list) {
+                listKeys.add(key);
+            }
+            // 超出上限时从最久未访问的页面开始淘汰
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> next = eldest.next();
+                eldest.remove();
+                unlink(next.getKey(), next.getValue());
+            }
+        }
+    }
+
+    /**
+     * 目录变更时失效受影响的页面；全量加载时清空
+     */
+    @EventListener
+    public synchronized void onCatalogUpdated(CatalogUpdatedEvent event) {
+        if (event.isReload()) {
+            clear();
+            return;
+        }
+        Product previous = event.getPrevious();
+        Product current = event.getCurrent();
+        Long id = current != null ? current.getId() : previous.getId();
+
+        Set<String> keys = keysByProduct.get(id);
+        if (keys != null) {
+            for (String key : Set.copyOf(keys)) {
+                remove(key);
+            }
+        }
+        if (affectsLists(previous, current)) {
+            for (String key : Set.copyOf(listKeys)) {
+                remove(key);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        keysByProduct.clear();
+        listKeys.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 商品的变化是否会改变列表页的筛选、排序或分面数量
+     * 只有库存数量变化（且有无库存的状态不变）时，只需要失效显示了该商品的页面
+     */
+    private boolean affectsLists(Product previous, Product current) {
+        if (previous == null || current == null) {
+            return true;
+        }
+        return !Objects.equals(previous.getCategory(), current.getCategory())
+            || !Objects.equals(previous.getName(), current.getName())
+            || !Objects.equals(previous.getDescription(), current.getDescription())
+            || !Objects.equals(previous.getDescriptionRef(), current.getDescriptionRef())
+            || !Objects.equals(previous.getPrice(), current.getPrice())
+            || inStock(previous) != inStock(current);
+    }
+
+    private boolean inStock(Product product) {
+        return product.getStock() != null && product.getStock() > 0;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            unlink(key, entry);
+        }
+    }
+
+    /**
+     * 从反向索引中移除页面
+     */
+    private void unlink(String key, Entry entry) {
+        bytes -= entry.weight();
+        for (Long id : entry.productIds) {
+            Set<String> keys = keysByProduct.get(id);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByProduct.remove(id);
+                }
+            }
+        }
+        listKeys.remove(key);
+    }
+
+    private byte[] gzip(byte[] body) {
+        if (body.length < GZIP_MIN_BYTES) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+}
\ No newline at end of file
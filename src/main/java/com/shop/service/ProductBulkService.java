@@ -0,0 +1,344 @@
+package com.shop.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.shop.dto.ImportResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 商品批量导入导出
+ * 导入：流式读取上传的 CSV / JSONL，逐行校验，按块使用 JDBC 批量 upsert；
+ * 导出：使用 MySQL 流式结果集逐行写出，不在内存中保存全部商品
+ */
+@Service
+public class ProductBulkService {
+
+    // CSV 列顺序（第一行为表头）
+    private static final String[] COLUMNS = {"id", "name", "description", "price", "stock", "image_url", "category"};
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO products (id, name, description, price, stock, image_url, category, flash_sale, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, 0, NOW(), NOW()) " +
+        "ON DUPLICATE KEY UPDATE name = VALUES(name), description = VALUES(description), " +
+        "price = VALUES(price), stock = VALUES(stock), image_url = VALUES(image_url), " +
+        "category = VALUES(category), updated_at = NOW()";
+
+    private static final int[] ARG_TYPES = {Types.BIGINT, Types.VARCHAR, Types.LONGVARCHAR, Types.DECIMAL,
+                                            Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
+
+    private static final BigDecimal MAX_PRICE = new BigDecimal("99999999.99");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 每批写入的行数
+     */
+    @Value("${shop.import.batch-size:1000}")
+    private int batchSize;
+
+    // 当前（或最近一次）导入的进度
+    private final AtomicReference<ImportResult> progress = new AtomicReference<>();
+
+    // 是否有导入正在进行（同一时间只允许一个导入，避免进度互相覆盖）
+    private final AtomicBoolean importing = new AtomicBoolean();
+
+    /**
+     * 导入商品，format 为 csv 或 jsonl
+     * 每一批在独立事务中提交，某批写入失败时逐行重试；已有导入正在进行时拒绝
+     */
+    public ImportResult importProducts(InputStream input, String format) throws IOException {
+        if (!importing.compareAndSet(false, true)) {
+            throw new RuntimeException("已有导入正在进行，请等待完成后再试");
+        }
+        try {
+            return doImport(input, format);
+        } finally {
+            importing.set(false);
+        }
+    }
+
+    private ImportResult doImport(InputStream input, String format) throws IOException {
+        ImportResult result = new ImportResult();
+        progress.set(result);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        boolean jsonl = "jsonl".equalsIgnoreCase(format);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            List<Long> batchLines = new ArrayList<>(batchSize);
+            long lineNo = jsonl ? 0 : 1;
+            if (!jsonl) {
+                readCsvRecord(reader);  // 跳过表头
+            }
+
+            while (true) {
+                List<String> fields = null;
+                String line = null;
+                if (jsonl) {
+                    line = reader.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    lineNo++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                } else {
+                    fields = readCsvRecord(reader);
+                    if (fields == null) {
+                        break;
+                    }
+                    lineNo++;
+                    if (fields.size() == 1 && fields.get(0).isBlank()) {
+                        continue;
+                    }
+                }
+
+                result.setTotal(result.getTotal() + 1);
+                try {
+                    batch.add(toRow(jsonl ? jsonFields(line) : fields));
+                    batchLines.add(lineNo);
+                } catch (IllegalArgumentException e) {
+                    result.addError(lineNo, e.getMessage());
+                }
+
+                if (batch.size() >= batchSize) {
+                    flush(tx, batch, batchLines, result);
+                }
+            }
+            flush(tx, batch, batchLines, result);
+        } finally {
+            result.setFinished(true);
+            if (result.getImported() > 0) {
+                catalogService.reload();
+            }
+            System.out.println("商品导入完成：共 " + result.getTotal() + " 行，成功 " + result.getImported()
+                + " 行，失败 " + result.getFailed() + " 行");
+        }
+        return result;
+    }
+
+    /**
+     * 当前（或最近一次）导入的进度，没有导入过时为 null
+     */
+    public ImportResult getProgress() {
+        return progress.get();
+    }
+
+    /**
+     * 导出全部商品，format 为 csv 或 jsonl
+     */
+    public void exportProducts(Writer writer, String format) throws IOException {
+        boolean jsonl = "jsonl".equalsIgnoreCase(format);
+        if (!jsonl) {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\n");
+        }
+
+        // fetchSize = Integer.MIN_VALUE 让 MySQL 驱动逐行流式返回，而不是一次读入全部结果
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(Integer.MIN_VALUE);
+        streaming.query("SELECT id, name, description, price, stock, image_url, category FROM products ORDER BY id", rs -> {
+            try {
+                if (jsonl) {
+                    ObjectNode node = objectMapper.createObjectNode();
+                    node.put("id", rs.getLong(1));
+                    node.put("name", rs.getString(2));
+                    node.put("description", rs.getString(3));
+                    node.put("price", rs.getBigDecimal(4));
+                    node.put("stock", rs.getInt(5));
+                    node.put("image_url", rs.getString(6));
+                    node.put("category", rs.getString(7));
+                    writer.write(objectMapper.writeValueAsString(node));
+                } else {
+                    for (int i = 1; i <= COLUMNS.length; i++) {
+                        if (i > 1) {
+                            writer.write(',');
+                        }
+                        writer.write(csvEscape(rs.getString(i)));
+                    }
+                }
+                writer.write("\n");
+            } catch (IOException e) {
+                throw new RuntimeException("导出失败：" + e.getMessage(), e);
+            }
+        });
+        writer.flush();
+    }
+
+    /**
+     * 批量写入一批数据；整批失败时逐行重试，只把真正写不进去的行记为错误
+     */
+    private void flush(TransactionTemplate tx, List<Object[]> batch, List<Long> lines, ImportResult result) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            tx.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, batch, ARG_TYPES));
+            result.setImported(result.getImported() + batch.size());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                result.addError(lines.get(0), "写入失败：" + e.getMessage());
+            } else {
+                for (int i = 0; i < batch.size(); i++) {
+                    Object[] row = batch.get(i);
+                    try {
+                        tx.executeWithoutResult(status -> jdbcTemplate.update(UPSERT_SQL, row, ARG_TYPES));
+                        result.setImported(result.getImported() + 1);
+                    } catch (RuntimeException single) {
+                        result.addError(lines.get(i), "写入失败：" + single.getMessage());
+                    }
+                }
+            }
+        }
+        batch.clear();
+        lines.clear();
+        System.out.println("商品导入进度：已处理 " + result.getTotal() + " 行，成功 " + result.getImported() + " 行");
+    }
+
+    /**
+     * 校验一行数据并转换为 SQL 参数
+     */
+    private Object[] toRow(List<String> fields) {
+        if (fields.size() < COLUMNS.length) {
+            throw new IllegalArgumentException("列数不足，需要 " + COLUMNS.length + " 列");
+        }
+        String id = trimToNull(fields.get(0));
+        String name = trimToNull(fields.get(1));
+        String description = trimToNull(fields.get(2));
+        String price = trimToNull(fields.get(3));
+        String stock = trimToNull(fields.get(4));
+        String imageUrl = trimToNull(fields.get(5));
+        String category = trimToNull(fields.get(6));
+
+        if (name == null || name.length() > 100) {
+            throw new IllegalArgumentException("商品名称不能为空且不超过 100 个字符");
+        }
+        if (imageUrl != null && imageUrl.length() > 255) {
+            throw new IllegalArgumentException("图片 URL 不能超过 255 个字符");
+        }
+        if (category != null && category.length() > 50) {
+            throw new IllegalArgumentException("分类不能超过 50 个字符");
+        }
+        try {
+            Long productId = id == null ? null : Long.valueOf(id);
+            BigDecimal productPrice = new BigDecimal(price == null ? "" : price);
+            if (productPrice.signum() < 0 || productPrice.compareTo(MAX_PRICE) > 0 || productPrice.scale() > 2) {
+                throw new IllegalArgumentException("价格必须在 0 到 99999999.99 之间，最多两位小数");
+            }
+            int productStock = stock == null ? 0 : Integer.parseInt(stock);
+            if (productStock < 0) {
+                throw new IllegalArgumentException("库存不能为负数");
+            }
+            return new Object[] {productId, name, description, productPrice, productStock, imageUrl, category};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ID、价格或库存格式错误");
+        }
+    }
+
+    private List<String> jsonFields(String line) {
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            List<String> fields = new ArrayList<>(COLUMNS.length);
+            for (String column : COLUMNS) {
+                JsonNode value = node.get(column);
+                fields.add(value == null || value.isNull() ? null : value.asText());
+            }
+            return fields;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON 格式错误");
+        }
+    }
+
+    /**
+     * 读取一条 CSV 记录（支持双引号包裹的字段，字段内可以包含逗号、换行和 "" 转义）
+     * 文件结束时返回 null
+     */
+    private List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        while (c != -1) {
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private String csvEscape(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
+
+    private String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
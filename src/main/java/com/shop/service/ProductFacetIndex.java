@@ -0,0 +1,175 @@
+package com.shop.service;
+
+import com.shop.entity.Product;
+import com.shop.event.CatalogUpdatedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品分面（facet）位图索引
+ * 每个分类和“有库存”各对应一个以商品 ID 为下标的位图，组合筛选即位图求交，
+ * 各分类的商品数可以在一次遍历中全部算出，不需要 GROUP BY；跟随目录快照增量维护
+ */
+@Component
+public class ProductFacetIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, BitSet> categories = new HashMap<>();
+    private final BitSet inStock = new BitSet();
+    private final BitSet all = new BitSet();
+
+    // 没有搜索条件时各分类的商品数（全部 / 只算有库存），目录变更时清空
+    private volatile Map<String, Integer> allCounts;
+    private volatile Map<String, Integer> inStockCounts;
+
+    /**
+     * 目录变更时增量维护位图，全量加载时重建
+     */
+    @EventListener
+    public void onCatalogUpdated(CatalogUpdatedEvent event) {
+        lock.writeLock().lock();
+        try {
+            allCounts = null;
+            inStockCounts = null;
+            if (event.isReload()) {
+                categories.clear();
+                inStock.clear();
+                all.clear();
+                for (Product product : event.getSnapshot().findAll()) {
+                    add(product);
+                }
+                return;
+            }
+            if (event.getPrevious() != null) {
+                remove(event.getPrevious());
+            }
+            if (event.getCurrent() != null) {
+                add(event.getCurrent());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 计算组合筛选结果：分类 AND 有库存 AND 搜索命中
+     * category 为 null、inStockOnly 为 false、hits 为 null 时对应条件不参与筛选
+     */
+    public BitSet filter(String category, boolean inStockOnly, BitSet hits) {
+        lock.readLock().lock();
+        try {
+            BitSet result = base(inStockOnly, hits);
+            if (category != null) {
+                BitSet bits = categories.get(category);
+                if (bits == null) {
+                    return new BitSet();
+                }
+                result.and(bits);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在当前搜索/库存条件下，一次遍历算出每个分类的商品数（按分类名排序，只读）
+     * 分类本身不参与筛选，这样页面可以显示切换到其他分类后的数量；
+     * 逐位检查交集，不复制位图；没有搜索条件时结果缓存到下一次目录变更
+     */
+    public Map<String, Integer> categoryCounts(boolean inStockOnly, BitSet hits) {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> cached = inStockOnly ? inStockCounts : allCounts;
+            if (hits == null && cached != null) {
+                return cached;
+            }
+            Map<String, Integer> counts = new TreeMap<>();
+            for (Map.Entry<String, BitSet> entry : categories.entrySet()) {
+                BitSet bits = entry.getValue();
+                int count = 0;
+                for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+                    if ((!inStockOnly || inStock.get(bit)) && (hits == null || hits.get(bit))) {
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    counts.put(entry.getKey(), count);
+                }
+            }
+            Map<String, Integer> result = Collections.unmodifiableMap(counts);
+            if (hits == null) {
+                // 持有读锁，写锁（清空缓存）不会在计算和保存之间插入
+                if (inStockOnly) {
+                    inStockCounts = result;
+                } else {
+                    allCounts = result;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在当前分类/搜索条件下有库存的商品数
+     */
+    public int inStockCount(String category, BitSet hits) {
+        return filter(category, true, hits).cardinality();
+    }
+
+    /**
+     * 把商品 ID 集合转换为位图（用于搜索命中）
+     */
+    public static BitSet toBits(Collection<Long> ids) {
+        BitSet bits = new BitSet();
+        for (Long id : ids) {
+            bits.set(Math.toIntExact(id));
+        }
+        return bits;
+    }
+
+    private BitSet base(boolean inStockOnly, BitSet hits) {
+        BitSet result = (BitSet) (inStockOnly ? inStock : all).clone();
+        if (hits != null) {
+            result.and(hits);
+        }
+        return result;
+    }
+
+    private void add(Product product) {
+        int bit = Math.toIntExact(product.getId());
+        all.set(bit);
+        if (product.getStock() != null && product.getStock() > 0) {
+            inStock.set(bit);
+        }
+        if (product.getCategory() != null) {
+            categories.computeIfAbsent(product.getCategory(), k -> new BitSet()).set(bit);
+        }
+    }
+
+    private void remove(Product product) {
+        int bit = Math.toIntExact(product.getId());
+        all.clear(bit);
+        inStock.clear(bit);
+        if (product.getCategory() != null) {
+            BitSet bits = categories.get(product.getCategory());
+            if (bits != null) {
+                bits.clear(bit);
+                if (bits.isEmpty()) {
+                    categories.remove(product.getCategory());
+                }
+            }
+        }
+    }
+}
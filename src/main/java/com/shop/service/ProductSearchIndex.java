@@ -0,0 +1,214 @@
+package com.shop.service;
+
+import com.shop.entity.Product;
+import com.shop.event.CatalogUpdatedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品搜索倒排索引（进程内）
+ * 按字符二元组（bigram）切分商品名称、分类和描述，中文名称无需分词也能检索；
+ * 跟随目录快照增量维护，替代 LIKE '%kw%' 全表扫描
+ */
+@Component
+public class ProductSearchIndex {
+
+    // 字段权重：名称 > 分类 > 描述
+    private static final int NAME_WEIGHT = 3;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    // 名称完整包含关键词时的额外加分
+    private static final int EXACT_NAME_BONUS = 10;
+
+    @Autowired
+    private DescriptionStore descriptionStore;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 词元 -> (商品 ID -> 权重)
+    private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+    // 商品 ID -> 该商品的全部词元（删除时使用）
+    private final Map<Long, Set<String>> docTerms = new HashMap<>();
+    // 商品 ID -> 规范化后的名称（用于完整匹配加分）
+    private final Map<Long, String> names = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    /**
+     * 目录变更时增量维护索引，全量加载时重建
+     */
+    @EventListener
+    public void onCatalogUpdated(CatalogUpdatedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (event.isReload()) {
+                postings.clear();
+                docTerms.clear();
+                names.clear();
+                for (Product product : event.getSnapshot().findAll()) {
+                    add(product);
+                }
+                ready = true;
+                return;
+            }
+            if (event.getPrevious() != null) {
+                remove(event.getPrevious().getId());
+            }
+            if (event.getCurrent() != null) {
+                add(event.getCurrent());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 索引是否已建立（目录未加载时调用方应回退到数据库查询）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 搜索商品，返回按相关度降序排列的商品 ID
+     * 关键词的每个词元都必须命中（与 LIKE 的语义一致）
+     */
+    public List<Long> search(String keyword) {
+        List<String> queryTerms = new ArrayList<>(tokenize(keyword, false));
+        if (queryTerms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String normalized = normalize(keyword);
+
+        lock.readLock().lock();
+        try {
+            // 从最短的倒排表开始求交集
+            List<Map<Long, Integer>> lists = new ArrayList<>();
+            for (String term : queryTerms) {
+                Map<Long, Integer> list = postings.get(term);
+                if (list == null) {
+                    return new ArrayList<>();
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(Map::size));
+
+            Map<Long, Integer> scores = new HashMap<>();
+            for (Map.Entry<Long, Integer> entry : lists.get(0).entrySet()) {
+                Long id = entry.getKey();
+                int score = entry.getValue();
+                boolean matched = true;
+                for (int i = 1; i < lists.size(); i++) {
+                    Integer weight = lists.get(i).get(id);
+                    if (weight == null) {
+                        matched = false;
+                        break;
+                    }
+                    score += weight;
+                }
+                if (matched) {
+                    String name = names.get(id);
+                    if (name != null && name.contains(normalized)) {
+                        score += EXACT_NAME_BONUS;
+                    }
+                    scores.put(id, score);
+                }
+            }
+
+            List<Long> result = new ArrayList<>(scores.keySet());
+            result.sort((a, b) -> {
+                int cmp = Integer.compare(scores.get(b), scores.get(a));
+                return cmp != 0 ? cmp : Long.compare(a, b);
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(Product product) {
+        Map<String, Integer> weights = new HashMap<>();
+        collect(weights, product.getName(), NAME_WEIGHT);
+        collect(weights, product.getCategory(), CATEGORY_WEIGHT);
+        collect(weights, descriptionStore.descriptionOf(product), DESCRIPTION_WEIGHT);
+
+        Long id = product.getId();
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).put(id, entry.getValue());
+        }
+        docTerms.put(id, weights.keySet());
+        if (product.getName() != null) {
+            names.put(id, normalize(product.getName()));
+        }
+    }
+
+    private void remove(Long id) {
+        Set<String> terms = docTerms.remove(id);
+        names.remove(id);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Long, Integer> list = postings.get(term);
+            if (list != null) {
+                list.remove(id);
+                if (list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private void collect(Map<String, Integer> weights, String text, int weight) {
+        if (text == null) {
+            return;
+        }
+        for (String term : tokenize(text, true)) {
+            weights.merge(term, weight, Integer::sum);
+        }
+    }
+
+    /**
+     * 切分词元：每段连续的字母/数字/汉字生成相邻二元组
+     * 建索引时额外收录单字，查询时只有单个字符的片段才用单字检索
+     */
+    static Set<String> tokenize(String text, boolean withUnigrams) {
+        Set<String> terms = new LinkedHashSet<>();
+        String normalized = normalize(text);
+        int start = 0;
+        while (start < normalized.length()) {
+            while (start < normalized.length() && !Character.isLetterOrDigit(normalized.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < normalized.length() && Character.isLetterOrDigit(normalized.charAt(end))) {
+                end++;
+            }
+            if (withUnigrams || end - start == 1) {
+                for (int i = start; i < end; i++) {
+                    terms.add(normalized.substring(i, i + 1));
+                }
+            }
+            for (int i = start; i + 1 < end; i++) {
+                terms.add(normalized.substring(i, i + 2));
+            }
+            start = end;
+        }
+        return terms;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
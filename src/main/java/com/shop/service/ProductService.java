@@ -1,14 +1,35 @@
 package com.shop.service;
 
+import com.shop.dto.ProductFacets;
+import com.shop.dto.ProductPage;
+import com.shop.dto.ProductSort;
+import com.shop.dto.ProductSummaryDTO;
+import com.shop.dto.SuggestionDTO;
 import com.shop.entity.Product;
+import com.shop.event.ProductChangedEvent;
 import com.shop.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 商品业务逻辑类
+ * 读操作走内存目录（CatalogService），写操作提交后通过 ProductChangedEvent 刷新目录
  */
 @Service
 public class ProductService {
@@ -16,25 +37,325 @@ public class ProductService {
     @Autowired
     private ProductRepository productRepository;
     
+    @Autowired
+    private CatalogService catalogService;
+    
+    @Autowired
+    private ProductSearchIndex searchIndex;
+    
+    @Autowired
+    private ProductFacetIndex facetIndex;
+    
+    @Autowired
+    private ProductSuggestIndex suggestIndex;
+    
+    @Autowired
+    private DescriptionStore descriptionStore;
+    
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    /**
+     * 商品总数缓存的有效期（毫秒），仅在目录未启用、直接查询数据库时使用
+     */
+    @Value("${shop.products.count-cache-ttl-ms:60000}")
+    private long countCacheTtlMs;
+    
+    // 过滤条件 -> {总数, 缓存时间}
+    private final Map<String, long[]> countCache = new ConcurrentHashMap<>();
+    
+    // 价格降序首页使用的上界（DECIMAL(10,2) 的最大值）
+    private static final BigDecimal MAX_PRICE = new BigDecimal("99999999.99");
+    
     /**
      * 查找所有商品
      */
     public List<Product> findAll() {
-        return productRepository.findAll();
+        return catalogService.findAll();
     }
     
     /**
      * 根据 ID 查找商品
      */
     public Product findById(Long id) {
+        return catalogService.findById(id);
+    }
+    
+    /**
+     * 商品最后修改时间（条件请求校验用），优先读内存目录，商品不存在时返回 null
+     */
+    public LocalDateTime findUpdatedAt(Long id) {
+        CatalogSnapshot snapshot = catalogService.getSnapshot();
+        if (snapshot != null) {
+            Product product = snapshot.findById(id);
+            if (product != null) {
+                return product.getUpdatedAt();
+            }
+        }
+        return productRepository.findUpdatedAtById(id).orElse(null);
+    }
+    
+    /**
+     * 商品目录内容标识（列表页条件请求校验用）：内容指纹加商品数，只取决于数据库中的商品数据；
+     * 目录未启用或未加载时为 null
+     */
+    public String getCatalogTag() {
+        CatalogSnapshot snapshot = catalogService.getSnapshot();
+        return snapshot == null ? null : Long.toHexString(snapshot.getFingerprint()) + "." + snapshot.size();
+    }
+    
+    /**
+     * 从数据库加载完整的商品实体（管理后台编辑使用，保证拿到最新数据）
+     */
+    public Product findEntityById(Long id) {
         return productRepository.findById(id).orElse(null);
     }
     
+    /**
+     * 管理后台商品列表（投影，不加载描述）
+     */
+    public List<ProductSummaryDTO> findAllSummaries() {
+        return productRepository.findAllSummaries();
+    }
+    
     /**
      * 根据分类查找商品
      */
     public List<Product> findByCategory(String category) {
-        return productRepository.findByCategory(category);
+        return catalogService.findByCategory(category);
+    }
+    
+    /**
+     * 搜索商品（匹配名称、分类和描述，按相关度排序）
+     * 倒排索引未建立时回退到数据库模糊查询
+     */
+    public List<Product> search(String keyword) {
+        CatalogSnapshot snapshot = catalogService.getSnapshot();
+        if (snapshot == null || !searchIndex.isReady()) {
+            return searchByName(keyword);
+        }
+        List<Product> products = new ArrayList<>();
+        for (Long id : searchIndex.search(keyword)) {
+            Product product = snapshot.findById(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+    
+    /**
+     * 商品描述（内存目录中的商品只保存描述句柄，需要时从 DescriptionStore 读取）
+     */
+    public String getDescription(Product product) {
+        return descriptionStore.descriptionOf(product);
+    }
+    
+    /**
+     * 搜索框自动补全：返回以 prefix 开头的商品名称和分类，按销量排序
+     * 只使用内存前缀树，目录未加载时返回空列表，不查询数据库
+     */
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        if (prefix == null || !suggestIndex.isReady()) {
+            return new ArrayList<>();
+        }
+        return suggestIndex.suggest(prefix, limit);
+    }
+    
+    /**
+     * 分页查询商品列表（游标分页）
+     * category、search、inStockOnly 可以组合；after / before 为上一页返回的游标，二者都为空时返回第一页
+     */
+    public ProductPage findPage(String category, String search, boolean inStockOnly, ProductSort sort,
+                                String after, String before, int size) {
+        String categoryFilter = category == null || category.isEmpty() ? null : category;
+        String keyword = search == null || search.isEmpty() ? null : search;
+        
+        CatalogSnapshot snapshot = catalogService.getSnapshot();
+        if (snapshot != null && (keyword == null || searchIndex.isReady())) {
+            return pageInMemory(snapshot, categoryFilter, keyword, inStockOnly, sort, after, before, size);
+        }
+        return pageFromDatabase(categoryFilter, keyword, inStockOnly, sort, after, before, size);
+    }
+    
+    /**
+     * 从内存目录分页：用分面位图求出候选集并统计各分类数量，再按游标定位
+     */
+    private ProductPage pageInMemory(CatalogSnapshot snapshot, String category, String keyword, boolean inStockOnly,
+                                     ProductSort sort, String after, String before, int size) {
+        List<Long> ranked = keyword != null ? searchIndex.search(keyword) : null;
+        BitSet hits = ranked != null ? ProductFacetIndex.toBits(ranked) : null;
+        BitSet matched = facetIndex.filter(category, inStockOnly, hits);
+        
+        List<Product> candidates = new ArrayList<>(matched.cardinality());
+        boolean byRelevance = ranked != null && sort == ProductSort.DEFAULT;
+        if (byRelevance) {
+            // 保持搜索结果的相关度顺序
+            for (Long id : ranked) {
+                addIfPresent(candidates, snapshot, matched.get(Math.toIntExact(id)) ? id : null);
+            }
+        } else {
+            // 位图按 ID 升序遍历，正好是默认排序
+            for (int bit = matched.nextSetBit(0); bit >= 0; bit = matched.nextSetBit(bit + 1)) {
+                addIfPresent(candidates, snapshot, (long) bit);
+            }
+            if (sort != ProductSort.DEFAULT) {
+                candidates.sort(sort.getComparator());
+            }
+        }
+        
+        // 搜索结果按相关度排列，游标只按 ID 定位；其余按排序键二分查找
+        // 游标无法解析、游标商品已不在结果中，或向前翻页时前面已经没有商品，都从第一页开始
+        int start;
+        int end;
+        if (before != null && !before.isEmpty()) {
+            end = byRelevance ? indexOfId(candidates, before) : position(candidates, sort, before, false);
+            if (end <= 0) {
+                end = Math.min(candidates.size(), size);
+            }
+            start = Math.max(0, end - size);
+        } else {
+            // 找不到时为 -1，加一后正好从第一页开始
+            start = after == null || after.isEmpty() ? 0
+                  : byRelevance ? indexOfId(candidates, after) + 1
+                  : Math.max(0, position(candidates, sort, after, true));
+            end = Math.min(candidates.size(), start + size);
+        }
+        List<ProductSummaryDTO> items = new ArrayList<>(end - start);
+        for (Product product : candidates.subList(start, end)) {
+            String description = product.getDescriptionRef() != null
+                ? descriptionStore.prefix(product.getDescriptionRef(), ProductSummaryDTO.DESCRIPTION_PREFIX_LENGTH)
+                : product.getDescription();
+            items.add(ProductSummaryDTO.from(product, description));
+        }
+        
+        String prev = start > 0 && !items.isEmpty() ? cursorOf(items.get(0), sort, byRelevance) : null;
+        String next = end < candidates.size() && !items.isEmpty() ? cursorOf(items.get(items.size() - 1), sort, byRelevance) : null;
+        ProductFacets facets = new ProductFacets(facetIndex.categoryCounts(inStockOnly, hits),
+                                                 facetIndex.inStockCount(category, hits));
+        return new ProductPage(items, prev, next, candidates.size(), facets);
+    }
+    
+    private void addIfPresent(List<Product> products, CatalogSnapshot snapshot, Long id) {
+        Product product = id != null ? snapshot.findById(id) : null;
+        if (product != null) {
+            products.add(product);
+        }
+    }
+    
+    private String cursorOf(ProductSummaryDTO product, ProductSort sort, boolean byRelevance) {
+        return byRelevance ? String.valueOf(product.getId()) : sort.cursorOf(product.getId(), product.getPrice());
+    }
+    
+    /**
+     * 游标商品在结果中的下标，不在结果中时返回 -1
+     */
+    private int indexOfId(List<Product> products, String cursor) {
+        for (int i = 0; i < products.size(); i++) {
+            if (String.valueOf(products.get(i).getId()).equals(cursor)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 二分查找游标位置：after 为 true 时返回第一个大于游标的下标，否则返回第一个不小于游标的下标；
+     * 游标无法解析时返回 -1
+     */
+    private int position(List<Product> products, ProductSort sort, String cursor, boolean after) {
+        Product probe = sort.parseCursor(cursor);
+        if (probe == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = products.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = sort.getComparator().compare(products.get(mid), probe);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * 从数据库分页：每种排序都有正向和反向两条 keyset 查询，多取一条判断是否还有下一页
+     */
+    private ProductPage pageFromDatabase(String category, String keyword, boolean inStockOnly, ProductSort sort,
+                                         String after, String before, int size) {
+        boolean backward = before != null && !before.isEmpty();
+        Product cursor = sort.parseCursor(backward ? before : after);
+        if (backward && cursor == null) {
+            // 向前翻页的游标无法解析，从第一页开始（与内存目录一致）
+            backward = false;
+        }
+        Pageable limit = PageRequest.of(0, size + 1);
+        
+        // 反向翻页时 DEFAULT 与 NEWEST、PRICE_ASC 与 PRICE_DESC 互为逆序
+        boolean ascending = (sort == ProductSort.DEFAULT || sort == ProductSort.PRICE_ASC) != backward;
+        List<ProductSummaryDTO> rows;
+        if (sort.isByPrice()) {
+            BigDecimal price = cursor != null ? cursor.getPrice() : (ascending ? BigDecimal.valueOf(-1) : MAX_PRICE);
+            Long id = cursor != null ? cursor.getId() : (ascending ? 0L : Long.MAX_VALUE);
+            rows = ascending ? productRepository.findPageByPriceAfter(category, keyword, inStockOnly, price, id, limit)
+                             : productRepository.findPageByPriceBefore(category, keyword, inStockOnly, price, id, limit);
+        } else {
+            Long id = cursor != null ? cursor.getId() : (ascending ? 0L : Long.MAX_VALUE);
+            rows = ascending ? productRepository.findPageByIdAfter(category, keyword, inStockOnly, id, limit)
+                             : productRepository.findPageByIdBefore(category, keyword, inStockOnly, id, limit);
+        }
+        
+        if (backward && rows.isEmpty()) {
+            // 游标前面已经没有商品（例如商品被删除），从第一页开始
+            return pageFromDatabase(category, keyword, inStockOnly, sort, null, null, size);
+        }
+        
+        boolean more = rows.size() > size;
+        List<ProductSummaryDTO> items = new ArrayList<>(more ? rows.subList(0, size) : rows);
+        if (backward) {
+            Collections.reverse(items);
+        }
+        
+        String prev = null;
+        String next = null;
+        if (!items.isEmpty()) {
+            boolean hasPrev = backward ? more : cursor != null;
+            boolean hasNext = backward || more;
+            prev = hasPrev ? cursorOf(items.get(0), sort, false) : null;
+            next = hasNext ? cursorOf(items.get(items.size() - 1), sort, false) : null;
+        }
+        // 目录未启用时不提供分面统计
+        return new ProductPage(items, prev, next, countMatching(category, keyword, inStockOnly), null);
+    }
+    
+    /**
+     * 符合条件的商品总数（带缓存，避免每次翻页都执行 COUNT(*)）
+     */
+    private long countMatching(String category, String keyword, boolean inStockOnly) {
+        String key = category + "|" + keyword + "|" + inStockOnly;
+        long now = System.currentTimeMillis();
+        long[] cached = countCache.get(key);
+        if (cached != null && now - cached[1] < countCacheTtlMs) {
+            return cached[0];
+        }
+        long count = productRepository.countMatching(category, keyword, inStockOnly);
+        countCache.put(key, new long[] {count, now});
+        return count;
+    }
+    
+    /**
+     * 商品变更提交后清空总数缓存
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        countCache.clear();
     }
     
     /**
@@ -49,7 +370,9 @@ public class ProductService {
      */
     @Transactional
     public Product save(Product product) {
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(saved.getId()));
+        return saved;
     }
     
     /**
@@ -58,14 +381,16 @@ public class ProductService {
     @Transactional
     public void delete(Long id) {
         productRepository.deleteById(id);
+        eventPublisher.publishEvent(new ProductChangedEvent(id));
     }
     
     /**
      * 更新库存
+     * 必须读取数据库中的实体，不能修改目录快照里的共享副本
      */
     @Transactional
     public void updateStock(Long productId, int quantity) {
-        Product product = findById(productId);
+        Product product = productRepository.findById(productId).orElse(null);
         if (product == null) {
             throw new RuntimeException("商品不存在");
         }
@@ -77,5 +402,70 @@ public class ProductService {
         
         product.setStock(newStock);
         productRepository.save(product);
+        eventPublisher.publishEvent(new ProductChangedEvent(productId));
+    }
+    
+    /**
+     * 批量扣减库存（下单时使用，必须在调用方的事务中执行）
+     * 每行执行 UPDATE ... SET stock = stock - ? WHERE id = ? AND stock >= ?，条件更新本身就是原子的，
+     * 不需要先查询；按商品 ID 升序执行，并发下单时加行锁的顺序一致，避免死锁。
+     * 任何一行更新 0 条都抛出异常，由调用方事务整体回滚
+     * @param quantities 商品 ID -> 购买数量
+     */
+    @Transactional
+    public void reserveStock(Map<Long, Integer> quantities) {
+        List<Map.Entry<Long, Integer>> rows = sortedRows(quantities);
+        if (rows.isEmpty()) {
+            return;
+        }
+        int[] counts = jdbcTemplate.batchUpdate(
+            "UPDATE products SET stock = stock - ?, updated_at = NOW() WHERE id = ? AND stock >= ?",
+            rows, rows.size(), (ps, row) -> {
+                ps.setInt(1, row.getValue());
+                ps.setLong(2, row.getKey());
+                ps.setInt(3, row.getValue());
+            })[0];
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                Product product = catalogService.findById(rows.get(i).getKey());
+                throw new RuntimeException(product == null ? "商品不存在" : "库存不足：" + product.getName());
+            }
+        }
+        publishChanged(rows);
+    }
+    
+    /**
+     * 批量归还库存（取消订单时使用），同样按商品 ID 升序执行
+     * @param quantities 商品 ID -> 归还数量
+     */
+    @Transactional
+    public void releaseStock(Map<Long, Integer> quantities) {
+        List<Map.Entry<Long, Integer>> rows = sortedRows(quantities);
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+            "UPDATE products SET stock = stock + ?, updated_at = NOW() WHERE id = ?",
+            rows, rows.size(), (ps, row) -> {
+                ps.setInt(1, row.getValue());
+                ps.setLong(2, row.getKey());
+            });
+        publishChanged(rows);
+    }
+    
+    private List<Map.Entry<Long, Integer>> sortedRows(Map<Long, Integer> quantities) {
+        List<Map.Entry<Long, Integer>> rows = new ArrayList<>(new TreeMap<>(quantities).entrySet());
+        for (Map.Entry<Long, Integer> row : rows) {
+            if (row.getValue() == null || row.getValue() <= 0) {
+                throw new RuntimeException("商品数量必须大于 0");
+            }
+        }
+        return rows;
+    }
+    
+    private void publishChanged(List<Map.Entry<Long, Integer>> rows) {
+        for (Map.Entry<Long, Integer> row : rows) {
+            eventPublisher.publishEvent(new ProductChangedEvent(row.getKey()));
+        }
     }
 }
\ No newline at end of file
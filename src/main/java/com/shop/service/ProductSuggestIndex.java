@@ -0,0 +1,380 @@
+package com.shop.service;
+
+import com.shop.dto.SuggestionDTO;
+import com.shop.entity.Product;
+import com.shop.event.CatalogUpdatedEvent;
+import com.shop.repository.OrderItemRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 搜索框自动补全（前缀树）
+ * 商品名称（以及名称中每个词的开头）和分类名称插入前缀树，每个节点预先保存该前缀下权重最高的 K 条建议，
+ * 查询只需沿前缀走到对应节点，不访问数据库；权重取商品销量，跟随目录快照增量维护
+ */
+@Component
+public class ProductSuggestIndex {
+
+    // 每个节点保存的建议条数
+    private static final int TOP_K = 10;
+    // 插入前缀树的词最长字符数，限制节点数量
+    private static final int MAX_KEY_LENGTH = 32;
+
+    private static final Comparator<Suggestion> BY_WEIGHT =
+        Comparator.comparingLong((Suggestion s) -> s.weight).reversed().thenComparing(s -> s.text);
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Node root = new Node();
+    // 商品 ID -> 商品销量（权重）
+    private Map<Long, Long> sales = new HashMap<>();
+    // 分类 -> 分类下商品的 (商品数, 总销量)
+    private final Map<String, long[]> categoryStats = new HashMap<>();
+    // 当前在前缀树中的商品建议和分类建议，删除时使用
+    private final Map<Long, Suggestion> productSuggestions = new HashMap<>();
+    private final Map<String, Suggestion> categorySuggestions = new HashMap<>();
+
+    private volatile boolean ready = false;
+    // 全量重建期间只插入，最后用一次后序遍历统一计算 top K
+    private boolean rebuilding = false;
+
+    /**
+     * 一条建议，key 用于同一建议在多个前缀下出现时去重
+     */
+    private static final class Suggestion {
+        final String key;
+        final String text;
+        final String type;
+        final Long productId;
+        final String category;
+        final long weight;
+
+        Suggestion(String key, String text, String type, Long productId, String category, long weight) {
+            this.key = key;
+            this.text = text;
+            this.type = type;
+            this.productId = productId;
+            this.category = category;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        // 以该节点结尾的词对应的建议
+        final List<Suggestion> terminals = new ArrayList<>(1);
+        // 该前缀下权重最高的建议（本节点和所有子节点合并）
+        List<Suggestion> top = Collections.emptyList();
+    }
+
+    /**
+     * 目录变更时增量更新，全量加载时连同销量一起重建
+     */
+    @EventListener
+    public void onCatalogUpdated(CatalogUpdatedEvent event) {
+        if (event.isReload()) {
+            rebuild(event.getSnapshot().findAll(), loadSales());
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (event.getPrevious() != null) {
+                removeProduct(event.getPrevious());
+            }
+            if (event.getCurrent() != null) {
+                addProduct(event.getCurrent(), true);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 定时刷新销量权重
+     */
+    @Scheduled(initialDelayString = "${shop.suggest.sales-refresh-ms:600000}",
+               fixedDelayString = "${shop.suggest.sales-refresh-ms:600000}")
+    public void refreshSales() {
+        Map<Long, Long> productSales = loadSales();
+        // 在写锁内取快照并重建：重建期间发生的目录变更，其事件会等重建完成后再增量应用，不会被旧快照覆盖
+        lock.writeLock().lock();
+        try {
+            CatalogSnapshot snapshot = catalogService.getSnapshot();
+            if (snapshot != null) {
+                rebuild(snapshot.findAll(), productSales);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 返回前缀对应的建议（最多 limit 条）
+     */
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        List<SuggestionDTO> result = new ArrayList<>();
+        if (normalized.isEmpty()) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < normalized.length() && node != null; i++) {
+                node = node.children.get(normalized.charAt(i));
+            }
+            if (node == null) {
+                return result;
+            }
+            for (Suggestion suggestion : node.top) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(new SuggestionDTO(suggestion.text, suggestion.type, suggestion.productId));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Long> loadSales() {
+        Map<Long, Long> result = new HashMap<>();
+        try {
+            for (Object[] row : orderItemRepository.getProductSalesStatistics()) {
+                result.put((Long) row[0], ((Number) row[2]).longValue());
+            }
+        } catch (Exception e) {
+            System.err.println("加载商品销量失败，自动补全按名称排序：" + e.getMessage());
+        }
+        return result;
+    }
+
+    private void rebuild(List<Product> products, Map<Long, Long> productSales) {
+        lock.writeLock().lock();
+        try {
+            root = new Node();
+            rebuilding = true;
+            sales = productSales;
+            categoryStats.clear();
+            productSuggestions.clear();
+            categorySuggestions.clear();
+            for (Product product : products) {
+                addProduct(product, false);
+            }
+            for (String category : categoryStats.keySet()) {
+                updateCategory(category);
+            }
+            rebuilding = false;
+            computeAll(root);
+            ready = true;
+        } finally {
+            rebuilding = false;
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addProduct(Product product, boolean updateCategory) {
+        // 已经在前缀树中（全量重建时已包含这次变更）时先删掉旧的，避免重复
+        if (productSuggestions.containsKey(product.getId())) {
+            removeProduct(product);
+        }
+        if (product.getName() == null) {
+            return;
+        }
+        long weight = sales.getOrDefault(product.getId(), 0L);
+        Suggestion suggestion = new Suggestion("p:" + product.getId(), product.getName(), "product",
+                                               product.getId(), product.getCategory(), weight);
+        productSuggestions.put(product.getId(), suggestion);
+        for (String key : keysOf(product.getName())) {
+            insert(key, suggestion);
+        }
+        if (product.getCategory() != null) {
+            long[] stats = categoryStats.computeIfAbsent(product.getCategory(), k -> new long[2]);
+            stats[0]++;
+            stats[1] += weight;
+            if (updateCategory) {
+                updateCategory(product.getCategory());
+            }
+        }
+    }
+
+    /**
+     * 按前缀树中实际保存的建议删除（而不是事件里的旧商品），重建后再收到已经包含在快照中的变更也不会算错分类统计
+     */
+    private void removeProduct(Product product) {
+        Suggestion suggestion = productSuggestions.remove(product.getId());
+        if (suggestion == null) {
+            return;
+        }
+        for (String key : keysOf(suggestion.text)) {
+            delete(key, suggestion);
+        }
+        String category = suggestion.category;
+        if (category != null) {
+            long[] stats = categoryStats.get(category);
+            if (stats != null) {
+                stats[0]--;
+                stats[1] -= suggestion.weight;
+                if (stats[0] <= 0) {
+                    categoryStats.remove(category);
+                }
+            }
+            updateCategory(category);
+        }
+    }
+
+    /**
+     * 分类的权重为分类下商品的总销量，商品增删时替换分类建议
+     */
+    private void updateCategory(String category) {
+        Suggestion old = categorySuggestions.remove(category);
+        if (old != null) {
+            for (String key : keysOf(category)) {
+                delete(key, old);
+            }
+        }
+        long[] stats = categoryStats.get(category);
+        if (stats == null) {
+            return;
+        }
+        Suggestion suggestion = new Suggestion("c:" + category, category, "category", null, category, stats[1]);
+        categorySuggestions.put(category, suggestion);
+        for (String key : keysOf(category)) {
+            insert(key, suggestion);
+        }
+    }
+
+    private void insert(String key, Suggestion suggestion) {
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+            path.add(node);
+        }
+        node.terminals.add(suggestion);
+        if (!rebuilding) {
+            recompute(path);
+        }
+    }
+
+    private void delete(String key, Suggestion suggestion) {
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.get(key.charAt(i));
+            if (node == null) {
+                return;
+            }
+            path.add(node);
+        }
+        node.terminals.remove(suggestion);
+
+        // 删除不再有任何词的节点
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node current = path.get(i);
+            if (!current.terminals.isEmpty() || !current.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(key.charAt(i - 1));
+            path.remove(i);
+        }
+        recompute(path);
+    }
+
+    /**
+     * 自下而上重新计算路径上各节点的 top K
+     */
+    private void recompute(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            computeTop(path.get(i));
+        }
+    }
+
+    /**
+     * 后序遍历计算整棵树的 top K
+     */
+    private void computeAll(Node node) {
+        for (Node child : node.children.values()) {
+            computeAll(child);
+        }
+        computeTop(node);
+    }
+
+    /**
+     * 节点的 top K：本节点的词 + 各子节点的 top K 合并
+     */
+    private void computeTop(Node node) {
+        List<Suggestion> candidates = new ArrayList<>(node.terminals);
+        for (Node child : node.children.values()) {
+            candidates.addAll(child.top);
+        }
+        candidates.sort(BY_WEIGHT);
+
+        List<Suggestion> top = new ArrayList<>(Math.min(TOP_K, candidates.size()));
+        Set<String> seen = new LinkedHashSet<>();
+        for (Suggestion candidate : candidates) {
+            if (top.size() >= TOP_K) {
+                break;
+            }
+            if (seen.add(candidate.key)) {
+                top.add(candidate);
+            }
+        }
+        node.top = Collections.unmodifiableList(top);
+    }
+
+    /**
+     * 需要插入前缀树的词：完整文本，以及从每个词开头开始的后缀（输入 "iph" 也能匹配 "苹果 iPhone 15"）
+     */
+    static Set<String> keysOf(String text) {
+        Set<String> keys = new LinkedHashSet<>();
+        String normalized = normalize(text);
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                continue;
+            }
+            boolean wordStart = i == 0 || !Character.isLetterOrDigit(normalized.charAt(i - 1))
+                || isHan(c) != isHan(normalized.charAt(i - 1));
+            if (wordStart) {
+                String key = normalized.substring(i);
+                keys.add(key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+            }
+        }
+        return keys;
+    }
+
+    private static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,375 @@
+package com.shop.service;
+
+import com.shop.entity.Order;
+import com.shop.entity.OrderItem;
+import com.shop.repository.OrderItemRepository;
+import com.shop.repository.OrderRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 销售计数器
+ * 下单、支付、改状态、取消时在本节点内存中累加增量（LongAdder，事务提交后才记录），
+ * 定时把增量加到 sales_counters 汇总表（检查点），统计页面只读这张小表和本节点未写入的增量，与订单量无关。
+ * 计数键：status:状态（订单数、金额）、month:yyyy-MM:状态（按下单月份）、product:商品ID（已支付类订单的销量、销售额）；
+ * 订单归档不影响计数。汇总表可以随时从 orders 和归档表重建
+ */
+@Service
+@DependsOn("entityManagerFactory")
+public class SalesCounterService {
+
+    public static final String STATUS_PREFIX = "status:";
+    public static final String MONTH_PREFIX = "month:";
+    public static final String PRODUCT_PREFIX = "product:";
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    // 计入销量的状态：进入 PAID 时记录商品销量（之后只会变为 SHIPPED、COMPLETED，不再变化）
+    private static final Set<String> PAID_STATUSES = Set.of("PAID", "SHIPPED", "COMPLETED");
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO sales_counters (counter_key, label, order_count, amount, quantity) VALUES (?, ?, ?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE label = COALESCE(VALUES(label), label), " +
+        "order_count = order_count + VALUES(order_count), amount = amount + VALUES(amount), " +
+        "quantity = quantity + VALUES(quantity)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * 是否使用计数器（关闭时统计页面每次聚合查询 orders）
+     */
+    @Value("${shop.sales-counters.enabled:true}")
+    private boolean enabled;
+
+    private TransactionTemplate transactionTemplate;
+
+    // 计数键 -> 本节点尚未写入汇总表的增量
+    private final Map<String, Delta> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 一个计数键的增量：订单数、金额（分）、商品数量
+     */
+    private static final class Delta {
+        final LongAdder count = new LongAdder();
+        final LongAdder cents = new LongAdder();
+        final LongAdder quantity = new LongAdder();
+        volatile String label;
+    }
+
+    /**
+     * 一个计数键的当前值
+     */
+    public static final class Totals {
+        private final String label;
+        private final long count;
+        private final BigDecimal amount;
+        private final long quantity;
+
+        Totals(String label, long count, BigDecimal amount, long quantity) {
+            this.label = label;
+            this.count = count;
+            this.amount = amount;
+            this.quantity = quantity;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (!enabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sales_counters (" +
+                                 "counter_key VARCHAR(64) NOT NULL PRIMARY KEY, " +
+                                 "label VARCHAR(255) NULL, " +
+                                 "order_count BIGINT NOT NULL, " +
+                                 "amount DECIMAL(19, 2) NOT NULL, " +
+                                 "quantity BIGINT NOT NULL)");
+            // 第一次启用时从订单数据建立
+            Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sales_counters", Integer.class);
+            if (rows == null || rows == 0) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            System.err.println("销售计数器初始化失败，统计页面将直接查询订单：" + e.getMessage());
+            enabled = false;
+        }
+    }
+
+    /**
+     * 停止前把本节点的增量写入汇总表
+     */
+    @PreDestroy
+    public void shutdown() {
+        checkpoint();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==================== 记录变化 ====================
+
+    /**
+     * 新订单（待支付），在保存订单的事务中调用
+     */
+    public void orderCreated(Order order) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime createdAt = order.getCreatedAt() != null ? order.getCreatedAt() : LocalDateTime.now();
+        long cents = toCents(order.getTotalPrice());
+        String status = order.getStatus();
+        afterCommit(() -> addOrder(status, createdAt, 1, cents));
+    }
+
+    /**
+     * 一批订单的状态从 from 改为 to，在修改状态的事务中调用（状态已经更新成功）
+     * 改为已支付时记录这些订单的商品销量
+     */
+    public void statusChanged(List<Long> orderIds, String from, String to) {
+        if (!enabled || orderIds.isEmpty() || from.equals(to)) {
+            return;
+        }
+        // 每行：订单 ID、金额、下单时间
+        List<Object[]> orders = orderRepository.findCounterRows(orderIds);
+        List<OrderItem> items = !PAID_STATUSES.contains(from) && PAID_STATUSES.contains(to)
+                                ? orderItemRepository.findByOrderIdIn(orderIds) : List.of();
+        List<Object[]> sold = new ArrayList<>(items.size());
+        for (OrderItem item : items) {
+            sold.add(new Object[] {item.getProductId(), item.getProductName(), item.getQuantity(),
+                                   toCents(item.getSubtotal())});
+        }
+        afterCommit(() -> {
+            for (Object[] order : orders) {
+                long cents = toCents((BigDecimal) order[1]);
+                LocalDateTime createdAt = (LocalDateTime) order[2];
+                addOrder(from, createdAt, -1, -cents);
+                addOrder(to, createdAt, 1, cents);
+            }
+            for (Object[] item : sold) {
+                Delta delta = delta(PRODUCT_PREFIX + item[0]);
+                delta.label = (String) item[1];
+                delta.quantity.add((Integer) item[2]);
+                delta.cents.add((Long) item[3]);
+            }
+        });
+    }
+
+    private void addOrder(String status, LocalDateTime createdAt, int count, long cents) {
+        Delta total = delta(STATUS_PREFIX + status);
+        total.count.add(count);
+        total.cents.add(cents);
+        Delta month = delta(MONTH_PREFIX + createdAt.format(MONTH) + ":" + status);
+        month.count.add(count);
+        month.cents.add(cents);
+    }
+
+    private Delta delta(String key) {
+        return pending.computeIfAbsent(key, k -> new Delta());
+    }
+
+    /**
+     * 事务提交后才记录，回滚的修改不计入
+     */
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 所有计数键的当前值（汇总表 + 本节点未写入的增量），按计数键排序
+     * 汇总表的行数只与状态数、月份数、商品数有关，与订单量无关
+     */
+    public Map<String, Totals> snapshot() {
+        Map<String, Totals> totals = new TreeMap<>();
+        jdbcTemplate.query("SELECT counter_key, label, order_count, amount, quantity FROM sales_counters", rs -> {
+            totals.put(rs.getString("counter_key"), new Totals(rs.getString("label"), rs.getLong("order_count"),
+                                                               rs.getBigDecimal("amount"), rs.getLong("quantity")));
+        });
+        for (Map.Entry<String, Delta> entry : pending.entrySet()) {
+            Delta delta = entry.getValue();
+            Totals stored = totals.get(entry.getKey());
+            long count = delta.count.sum();
+            BigDecimal amount = BigDecimal.valueOf(delta.cents.sum(), 2);
+            long quantity = delta.quantity.sum();
+            if (stored != null) {
+                totals.put(entry.getKey(), new Totals(delta.label != null ? delta.label : stored.label,
+                                                      stored.count + count, stored.amount.add(amount),
+                                                      stored.quantity + quantity));
+            } else {
+                totals.put(entry.getKey(), new Totals(delta.label, count, amount, quantity));
+            }
+        }
+        return totals;
+    }
+
+    // ==================== 检查点与重建 ====================
+
+    /**
+     * 定时把本节点的增量加到汇总表（一个事务，按计数键顺序更新，多个节点同时写入时不会死锁）
+     * 写入失败时把增量放回，下次再写
+     */
+    @Scheduled(fixedDelayString = "${shop.sales-counters.checkpoint-interval-ms:10000}")
+    public synchronized void checkpoint() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, long[]> drained = drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(drained.size());
+        for (Map.Entry<String, long[]> entry : drained.entrySet()) {
+            long[] values = entry.getValue();
+            args.add(new Object[] {entry.getKey(), pending.get(entry.getKey()).label, values[0],
+                                   BigDecimal.valueOf(values[1], 2), values[2]});
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, args));
+        } catch (Exception e) {
+            System.err.println("销售计数器写入失败，稍后重试：" + e.getMessage());
+            restore(drained);
+        }
+    }
+
+    /**
+     * 取出本节点的全部增量并清零（sumThenReset 不会丢失并发累加的值），按计数键排序
+     */
+    private Map<String, long[]> drain() {
+        Map<String, long[]> drained = new TreeMap<>();
+        for (Map.Entry<String, Delta> entry : pending.entrySet()) {
+            Delta delta = entry.getValue();
+            long count = delta.count.sumThenReset();
+            long cents = delta.cents.sumThenReset();
+            long quantity = delta.quantity.sumThenReset();
+            if (count != 0 || cents != 0 || quantity != 0) {
+                drained.put(entry.getKey(), new long[] {count, cents, quantity});
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * 写入失败时把取出的增量放回
+     */
+    private void restore(Map<String, long[]> drained) {
+        for (Map.Entry<String, long[]> entry : drained.entrySet()) {
+            Delta delta = delta(entry.getKey());
+            delta.count.add(entry.getValue()[0]);
+            delta.cents.add(entry.getValue()[1]);
+            delta.quantity.add(entry.getValue()[2]);
+        }
+    }
+
+    /**
+     * 从 orders、order_items 和归档表重新计算全部计数（全表扫描，只在首次启用、发现偏差或手动触发时执行）
+     * 开始前取出本节点的增量（对应的修改都已提交，会被重新计算包含），重建成功后丢弃，失败时放回；
+     * 重建期间提交的修改和其他节点尚未写入的增量可能被重复计入，由对账发现
+     */
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        boolean archive = orderArchiveService.isEnabled();
+        Map<String, long[]> drained = drain();
+        try {
+            transactionTemplate.executeWithoutResult(status -> recompute(archive));
+        } catch (RuntimeException e) {
+            restore(drained);
+            throw e;
+        }
+        System.out.println("销售计数器已重建");
+    }
+
+    private void recompute(boolean archive) {
+        jdbcTemplate.update("DELETE FROM sales_counters");
+
+        jdbcTemplate.update(
+            "INSERT INTO sales_counters (counter_key, label, order_count, amount, quantity) " +
+            "SELECT CONCAT('" + STATUS_PREFIX + "', status), NULL, SUM(order_count), SUM(amount), 0 FROM (" +
+            "SELECT status, COUNT(*) AS order_count, SUM(total_price) AS amount FROM orders GROUP BY status" +
+            (archive ? " UNION ALL SELECT status, order_count, total_amount FROM order_archive_totals" : "") +
+            ") t GROUP BY status");
+
+        jdbcTemplate.update(
+            "INSERT INTO sales_counters (counter_key, label, order_count, amount, quantity) " +
+            "SELECT CONCAT('" + MONTH_PREFIX + "', month, ':', status), NULL, COUNT(*), SUM(total_price), 0 FROM (" +
+            "SELECT DATE_FORMAT(created_at, '%Y-%m') AS month, status, total_price FROM orders" +
+            (archive ? " UNION ALL SELECT DATE_FORMAT(created_at, '%Y-%m'), status, total_price FROM orders_archive" : "") +
+            ") t GROUP BY month, status");
+
+        jdbcTemplate.update(
+            "INSERT INTO sales_counters (counter_key, label, order_count, amount, quantity) " +
+            "SELECT CONCAT('" + PRODUCT_PREFIX + "', product_id), MAX(product_name), 0, SUM(amount), SUM(quantity) FROM (" +
+            "SELECT oi.product_id, oi.product_name, oi.subtotal AS amount, oi.quantity FROM order_items oi " +
+            "JOIN orders o ON o.id = oi.order_id WHERE o.status IN ('PAID', 'SHIPPED', 'COMPLETED')" +
+            (archive ? " UNION ALL SELECT product_id, product_name, sales_amount, sold_quantity FROM order_archive_product_sales" : "") +
+            ") t GROUP BY product_id");
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount == null ? 0 : amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,233 @@
+package com.shop.service;
+
+import com.shop.dto.ProductSalesDTO;
+import com.shop.dto.SalesDashboardDTO;
+import com.shop.entity.OrderStatus;
+import com.shop.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 销售统计
+ * 开启销售计数器时统计页面只读计数器（与订单量无关）；关闭时各状态的订单数、金额和本月数据由一条
+ * GROUP BY status 查询得到（本月数据用条件聚合），再加上已归档订单的汇总。
+ * 定时对账：用聚合查询的结果核对计数器，确认有偏差时重建计数器
+ */
+@Service
+public class SalesStatsService {
+
+    // 计入销售额的状态
+    private static final Set<String> PAID_STATUSES = Set.of("PAID", "SHIPPED", "COMPLETED");
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private SalesCounterService salesCounterService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 对账发现偏差时是否自动重建计数器
+     */
+    @Value("${shop.sales-counters.auto-repair:true}")
+    private boolean autoRepair;
+
+    private Counter drift;
+
+    // 上一次对账时的差异，连续两次相同才认为计数器有偏差
+    private Map<String, String> lastDiff;
+
+    @PostConstruct
+    public void init() {
+        drift = Counter.builder("shop.sales.counters.drift").register(meterRegistry);
+    }
+
+    /**
+     * 统计页面的全部数据
+     */
+    public SalesDashboardDTO getDashboard() {
+        if (salesCounterService.isEnabled()) {
+            try {
+                return fromCounters();
+            } catch (Exception e) {
+                System.err.println("读取销售计数器失败，改为直接查询订单：" + e.getMessage());
+            }
+        }
+        return aggregate(true);
+    }
+
+    /**
+     * 从订单数据重建计数器（管理后台手动触发）
+     */
+    public void rebuildCounters() {
+        salesCounterService.rebuild();
+        lastDiff = null;
+    }
+
+    /**
+     * 定时对账：先写入本节点的增量，再比较计数器与聚合查询的各状态订单数、金额和本月数据
+     * 其他节点尚未写入的增量也会造成暂时的差异，所以与上一次对账的差异完全相同时才认为计数器有偏差
+     */
+    @Scheduled(initialDelayString = "${shop.sales-counters.reconcile-interval-ms:3600000}",
+               fixedDelayString = "${shop.sales-counters.reconcile-interval-ms:3600000}")
+    public synchronized void reconcile() {
+        if (!salesCounterService.isEnabled()) {
+            return;
+        }
+        try {
+            salesCounterService.checkpoint();
+            Map<String, String> diff = diff(aggregate(false), fromCounters());
+            if (diff.isEmpty()) {
+                lastDiff = null;
+                return;
+            }
+            if (!diff.equals(lastDiff)) {
+                lastDiff = diff;
+                System.out.println("销售计数器与订单数据暂不一致，下次对账时确认：" + diff);
+                return;
+            }
+            lastDiff = null;
+            drift.increment();
+            System.err.println("销售计数器有偏差：" + diff);
+            if (autoRepair) {
+                salesCounterService.rebuild();
+            }
+        } catch (Exception e) {
+            System.err.println("销售计数器对账失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 由计数器得到统计数据
+     */
+    private SalesDashboardDTO fromCounters() {
+        Map<String, SalesCounterService.Totals> totals = salesCounterService.snapshot();
+        String month = SalesCounterService.MONTH_PREFIX + YearMonth.now() + ":";
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Map<String, BigDecimal> sales = new LinkedHashMap<>();
+        for (OrderStatus status : OrderStatus.values()) {
+            counts.put(status.name(), 0L);
+            sales.put(status.name(), BigDecimal.ZERO);
+        }
+        long monthOrders = 0;
+        BigDecimal monthSales = BigDecimal.ZERO;
+        List<ProductSalesDTO> products = new ArrayList<>();
+
+        for (Map.Entry<String, SalesCounterService.Totals> entry : totals.entrySet()) {
+            String key = entry.getKey();
+            SalesCounterService.Totals value = entry.getValue();
+            if (key.startsWith(SalesCounterService.STATUS_PREFIX)) {
+                String status = key.substring(SalesCounterService.STATUS_PREFIX.length());
+                counts.put(status, value.getCount());
+                sales.put(status, value.getAmount());
+            } else if (key.startsWith(month)) {
+                monthOrders += value.getCount();
+                if (PAID_STATUSES.contains(key.substring(month.length()))) {
+                    monthSales = monthSales.add(value.getAmount());
+                }
+            } else if (key.startsWith(SalesCounterService.PRODUCT_PREFIX) && value.getQuantity() > 0) {
+                products.add(new ProductSalesDTO(Long.valueOf(key.substring(SalesCounterService.PRODUCT_PREFIX.length())),
+                                                 value.getLabel(), value.getQuantity(), value.getAmount()));
+            }
+        }
+        products.sort(Comparator.comparing(ProductSalesDTO::getSoldQuantity).reversed());
+        return build(counts, sales, monthOrders, monthSales, products);
+    }
+
+    /**
+     * 直接聚合查询 orders：一条 GROUP BY status 查询，加上已归档订单的汇总
+     */
+    private SalesDashboardDTO aggregate(boolean withProducts) {
+        LocalDateTime startOfMonth = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Map<String, BigDecimal> sales = new LinkedHashMap<>();
+        for (OrderStatus status : OrderStatus.values()) {
+            // 归档的订单都早于保留期（至少 31 天），不影响本月数据
+            counts.put(status.name(), orderArchiveService.archivedCount(status.name()));
+            sales.put(status.name(), orderArchiveService.archivedAmount(status.name()));
+        }
+
+        long monthOrders = 0;
+        BigDecimal monthSales = BigDecimal.ZERO;
+        // 每行：状态、订单数、金额、本月订单数、本月金额
+        List<Object[]> rows = orderRepository.aggregateByStatus(startOfMonth);
+        for (Object[] row : rows) {
+            String status = (String) row[0];
+            counts.merge(status, ((Number) row[1]).longValue(), Long::sum);
+            sales.merge(status, (BigDecimal) row[2], BigDecimal::add);
+            monthOrders += ((Number) row[3]).longValue();
+            if (PAID_STATUSES.contains(status)) {
+                monthSales = monthSales.add((BigDecimal) row[4]);
+            }
+        }
+        return build(counts, sales, monthOrders, monthSales,
+                     withProducts ? orderService.getProductSalesStatistics() : List.of());
+    }
+
+    private SalesDashboardDTO build(Map<String, Long> counts, Map<String, BigDecimal> sales,
+                                    long monthOrders, BigDecimal monthSales, List<ProductSalesDTO> products) {
+        long totalOrders = 0;
+        long paidOrders = 0;
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        BigDecimal totalSales = BigDecimal.ZERO;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            String status = entry.getKey();
+            totalOrders += entry.getValue();
+            totalAmount = totalAmount.add(sales.get(status));
+            if (PAID_STATUSES.contains(status)) {
+                paidOrders += entry.getValue();
+                totalSales = totalSales.add(sales.get(status));
+            }
+        }
+        return new SalesDashboardDTO(totalOrders, paidOrders, totalSales, totalAmount, monthOrders, monthSales,
+                                     counts, sales, products);
+    }
+
+    /**
+     * 聚合结果与计数器的差异：项目 -> "应为 / 计数器"
+     */
+    private Map<String, String> diff(SalesDashboardDTO expected, SalesDashboardDTO actual) {
+        Map<String, String> diff = new TreeMap<>();
+        for (String status : expected.getStatusCounts().keySet()) {
+            if (expected.countOf(status) != actual.countOf(status)) {
+                diff.put(status + " 订单数", expected.countOf(status) + " / " + actual.countOf(status));
+            }
+            if (expected.salesOf(status).compareTo(actual.salesOf(status)) != 0) {
+                diff.put(status + " 金额", expected.salesOf(status) + " / " + actual.salesOf(status));
+            }
+        }
+        if (expected.getMonthOrders() != actual.getMonthOrders()) {
+            diff.put("本月订单数", expected.getMonthOrders() + " / " + actual.getMonthOrders());
+        }
+        if (expected.getMonthSales().compareTo(actual.getMonthSales()) != 0) {
+            diff.put("本月销售额", expected.getMonthSales() + " / " + actual.getMonthSales());
+        }
+        return diff;
+    }
+}
\ No newline at end of file
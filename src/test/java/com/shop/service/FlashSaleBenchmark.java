@@ -0,0 +1,280 @@
+package com.shop.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个热门商品的抢购压测（手动运行的 main 程序，不是单元测试）
+ * 在同一个商品上对比两种扣库存方式的吞吐量和延迟：
+ *   逐请求：每个请求一个事务，直接在数据库中条件扣减库存（抢购改造前的下单路径）
+ *   分段令牌：先在 FlashSaleTokens 中扣令牌，抢不到直接拒绝；抢到的排队，由写线程按批合并扣减（FlashSaleService 的路径）
+ * 运行（需要可连接的 MySQL，表结构与应用相同）：
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/cp.txt) com.shop.service.FlashSaleBenchmark
+ * 参数（-D）：bench.url、bench.user、bench.password，bench.threads（并发请求数，默认 64），
+ * bench.requests（请求总数，默认 20000），bench.stock（库存，默认 5000），bench.pool（连接池大小，默认 10），
+ * bench.writers（写线程数，默认 2），bench.batch（每批最多合并的请求数，默认 100）
+ * 每轮在 products 表中插入一个临时商品，结束后删除
+ */
+public final class FlashSaleBenchmark {
+
+    private static final String URL = System.getProperty("bench.url",
+        "jdbc:mysql://localhost:3306/online_shopping?useSSL=false&serverTimezone=UTC");
+    private static final String USER = System.getProperty("bench.user", "root");
+    private static final String PASSWORD = System.getProperty("bench.password", "123456");
+
+    private static final int THREADS = Integer.getInteger("bench.threads", 64);
+    private static final int REQUESTS = Integer.getInteger("bench.requests", 20000);
+    private static final int STOCK = Integer.getInteger("bench.stock", 5000);
+    private static final int POOL = Integer.getInteger("bench.pool", 10);
+    private static final int WRITERS = Integer.getInteger("bench.writers", 2);
+    private static final int BATCH = Integer.getInteger("bench.batch", 100);
+
+    private static final String DEDUCT_SQL =
+        "UPDATE products SET stock = stock - ?, updated_at = NOW() WHERE id = ? AND stock >= ?";
+
+    private FlashSaleBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(URL);
+        config.setUsername(USER);
+        config.setPassword(PASSWORD);
+        config.setMaximumPoolSize(POOL);
+        try (HikariDataSource dataSource = new HikariDataSource(config)) {
+            System.out.println("单商品抢购压测：并发 " + THREADS + "，请求 " + REQUESTS + "，库存 " + STOCK
+                + "，连接池 " + POOL);
+            // 先各跑一轮预热（JIT、连接池、缓冲池），再正式计时
+            run(dataSource, false, false);
+            run(dataSource, true, false);
+            run(dataSource, false, true);
+            run(dataSource, true, true);
+        }
+    }
+
+    /**
+     * 跑一轮：插入临时商品，并发发出全部请求，统计结果后删除商品
+     */
+    private static void run(HikariDataSource dataSource, boolean striped, boolean report) throws Exception {
+        long productId = createProduct(dataSource);
+        try {
+            Result result = striped ? runStriped(dataSource, productId) : runBaseline(dataSource, productId);
+            int remaining = stockOf(dataSource, productId);
+            if (report) {
+                result.print(striped ? "分段令牌" : "逐请求", remaining);
+            }
+            if (remaining < 0 || result.sold.get() != STOCK - remaining) {
+                throw new IllegalStateException("库存不一致：售出 " + result.sold + "，剩余 " + remaining);
+            }
+        } finally {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement ps = connection.prepareStatement("DELETE FROM products WHERE id = ?")) {
+                ps.setLong(1, productId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * 逐请求：每个请求从连接池取连接，在一个事务中条件扣减一件
+     */
+    private static Result runBaseline(HikariDataSource dataSource, long productId) throws Exception {
+        Result result = new Result();
+        drive(result, () -> {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement ps = connection.prepareStatement(DEDUCT_SQL)) {
+                    ps.setInt(1, 1);
+                    ps.setLong(2, productId);
+                    ps.setInt(3, 1);
+                    boolean sold = ps.executeUpdate() == 1;
+                    connection.commit();
+                    result.transactions.incrementAndGet();
+                    return sold;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 分段令牌：请求线程只扣内存中的令牌，抢到的排队等待写线程按批写入
+     */
+    private static Result runStriped(HikariDataSource dataSource, long productId) throws Exception {
+        Result result = new Result();
+        FlashSaleTokens tokens = new FlashSaleTokens();
+        tokens.resetIfIdle(STOCK);
+        BlockingQueue<CompletableFuture<Boolean>> queue = new ArrayBlockingQueue<>(REQUESTS);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            Thread writer = new Thread(() -> {
+                List<CompletableFuture<Boolean>> batch = new ArrayList<>(BATCH);
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        batch.add(queue.take());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    queue.drainTo(batch, BATCH - 1);
+                    boolean written = writeBatch(dataSource, productId, batch.size());
+                    result.transactions.incrementAndGet();
+                    tokens.pending.addAndGet(-batch.size());
+                    for (CompletableFuture<Boolean> request : batch) {
+                        request.complete(written);
+                    }
+                    batch.clear();
+                }
+            }, "bench-writer-" + (i + 1));
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+
+        try {
+            drive(result, () -> {
+                if (!tokens.acquire(1)) {
+                    return false;
+                }
+                CompletableFuture<Boolean> request = new CompletableFuture<>();
+                queue.add(request);
+                return request.get();
+            });
+        } finally {
+            for (Thread writer : writers) {
+                writer.interrupt();
+            }
+        }
+        return result;
+    }
+
+    private static boolean writeBatch(HikariDataSource dataSource, long productId, int quantity) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(DEDUCT_SQL)) {
+                ps.setInt(1, quantity);
+                ps.setLong(2, productId);
+                ps.setInt(3, quantity);
+                boolean written = ps.executeUpdate() == 1;
+                connection.commit();
+                return written;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("批量写入失败：" + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 用 THREADS 个线程发出 REQUESTS 个请求，记录每个请求的耗时和结果
+     */
+    private static void drive(Result result, Request request) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                int n;
+                while ((n = next.getAndIncrement()) < REQUESTS) {
+                    long begin = System.nanoTime();
+                    try {
+                        if (request.call()) {
+                            result.sold.incrementAndGet();
+                        } else {
+                            result.rejected.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        result.errors.incrementAndGet();
+                    }
+                    result.latencies[n] = System.nanoTime() - begin;
+                }
+            }, "bench-client-" + (t + 1));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+    }
+
+    private static long createProduct(HikariDataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement(
+                 "INSERT INTO products (name, description, price, stock, flash_sale, created_at, updated_at) " +
+                 "VALUES ('压测商品', NULL, 1.00, ?, 1, NOW(), NOW())", Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, STOCK);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    private static int stockOf(HikariDataSource dataSource, long productId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT stock FROM products WHERE id = ?")) {
+            ps.setLong(1, productId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        /**
+         * 发出一个请求，返回是否买到
+         */
+        boolean call() throws Exception;
+    }
+
+    /**
+     * 一轮压测的统计
+     */
+    private static final class Result {
+        final AtomicInteger sold = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final AtomicInteger transactions = new AtomicInteger();
+        final long[] latencies = new long[REQUESTS];
+        long elapsedNanos;
+
+        void print(String name, int remaining) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%s：耗时 %.2f 秒，%.0f 请求/秒，售出 %d，拒绝 %d，出错 %d，剩余库存 %d，数据库事务 %d，"
+                    + "延迟 p50 %.2f ms / p99 %.2f ms / 最大 %.2f ms%n",
+                name, seconds, REQUESTS / seconds, sold.get(), rejected.get(), errors.get(), remaining,
+                transactions.get(), percentile(sorted, 0.50), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            int index = Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
\ No newline at end of file